@@ -0,0 +1,2 @@
+"C:\Program Files\Java\jdk-14\bin\java.exe" -cp "bin;../shared/bin;lib/*" --enable-preview ritzow.sandbox.benchmark.RunBenchmarks %*
+PAUSE
\ No newline at end of file
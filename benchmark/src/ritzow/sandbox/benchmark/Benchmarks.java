@@ -0,0 +1,99 @@
+package ritzow.sandbox.benchmark;
+
+import java.util.SplittableRandom;
+import ritzow.sandbox.data.SerializerReaderWriter;
+import ritzow.sandbox.data.TransportableDataReader;
+import ritzow.sandbox.network.Protocol;
+import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.block.DirtBlock;
+import ritzow.sandbox.world.block.GlassBlock;
+import ritzow.sandbox.world.block.GrassBlock;
+import ritzow.sandbox.world.component.Inventory;
+import ritzow.sandbox.world.entity.Entity;
+import ritzow.sandbox.world.entity.ItemEntity;
+import ritzow.sandbox.world.entity.PlayerEntity;
+import ritzow.sandbox.world.generator.SinusoidWorldGenerator;
+import ritzow.sandbox.world.item.BlockItem;
+import ritzow.sandbox.world.item.Item;
+
+/**
+ * Worlds, entities, and a serializer shared by the benchmarks. Everything is generated from a fixed
+ * seed so that every run of a benchmark measures the same work.
+ * @author Solomon Ritzow
+ */
+final class Benchmarks {
+	private Benchmarks() {}
+
+	static final long SEED = 2020;
+
+	/** The kind of entity added to benchmark worlds **/
+	enum EntityType {
+		/** Items, which don't interact with other entities and fall asleep once they land **/
+		ITEM,
+		/** Players, which collide with other entities and never sleep **/
+		PLAYER,
+		/** Items, with every tenth entity a player **/
+		MIXED
+	}
+
+	/**
+	 * A player that can be created without the client or server modules. Like a player on the server, it interacts
+	 * with other entities, so it is collision checked against them.
+	 */
+	static final class BenchmarkPlayerEntity extends PlayerEntity {
+		BenchmarkPlayerEntity(int entityID) {
+			super(entityID);
+		}
+
+		BenchmarkPlayerEntity(TransportableDataReader input) {
+			super(input);
+		}
+
+		@Override
+		public boolean interactsWithEntities() {
+			return true;
+		}
+	}
+
+	/** Reads and writes every type stored in a benchmark world **/
+	static final SerializerReaderWriter SERIALIZER = new SerializerReaderWriter()
+		.register(Protocol.DATA_WORLD, World.class, World::new)
+		.register(Protocol.DATA_BLOCK_GRID, BlockGrid.class, BlockGrid::new)
+		.register(Protocol.DATA_BLOCK_ITEM, BlockItem.class, BlockItem::new)
+		.register(Protocol.DATA_DIRT_BLOCK, DirtBlock.class, reader -> DirtBlock.INSTANCE)
+		.register(Protocol.DATA_GRASS_BLOCK, GrassBlock.class, reader -> GrassBlock.INSTANCE)
+		.register(Protocol.DATA_GLASS_BLOCK, GlassBlock.class, reader -> GlassBlock.INSTANCE)
+		.register(Protocol.DATA_ITEM_ENTITY, ItemEntity.class, ItemEntity::new)
+		.register(Protocol.DATA_INVENTORY, Inventory.class, Inventory::new)
+		.register(Protocol.DATA_PLAYER_ENTITY, BenchmarkPlayerEntity.class, BenchmarkPlayerEntity::new)
+		.freeze();
+
+	static World generateWorld(int width) {
+		return SinusoidWorldGenerator.builder().width(width).generate();
+	}
+
+	/** Generates a world with {@code count} entities placed at random in the sky above the terrain **/
+	static World populatedWorld(int width, int count, EntityType type) {
+		World world = generateWorld(width);
+		BlockGrid blocks = world.getBlocks();
+		SplittableRandom random = new SplittableRandom(SEED);
+		for(int i = 0; i < count; i++) {
+			Entity e = switch(type) {
+				case ITEM -> new ItemEntity<Item>(world.nextEntityID(), new BlockItem(DirtBlock.INSTANCE));
+				case PLAYER -> new BenchmarkPlayerEntity(world.nextEntityID());
+				case MIXED -> i % 10 == 0 ? new BenchmarkPlayerEntity(world.nextEntityID()) :
+					new ItemEntity<Item>(world.nextEntityID(), new BlockItem(DirtBlock.INSTANCE));
+			};
+			e.setPositionX((float)random.nextDouble(1, blocks.getWidth() - 1));
+			e.setPositionY(skyHeight(blocks, random));
+			world.add(e);
+		}
+		return world;
+	}
+
+	/** @return a random height in the top quarter of the world, which the generator leaves empty **/
+	private static float skyHeight(BlockGrid blocks, SplittableRandom random) {
+		return (float)random.nextDouble(blocks.getHeight() * 0.75, blocks.getHeight() - 1);
+	}
+}
@@ -0,0 +1,118 @@
+package ritzow.sandbox.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.block.Block;
+import ritzow.sandbox.world.block.GlassBlock;
+
+/**
+ * Measures common {@link BlockGrid} access patterns: scanning every cell in memory order, reading and
+ * writing random cells, and filling regions.
+ * @author Solomon Ritzow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockGridBenchmark {
+	/** Number of random cells accessed by each invocation of the random access benchmarks **/
+	private static final int RANDOM_CELLS = 1024;
+
+	@Param({"500", "2000"})
+	public int worldWidth;
+
+	private BlockGrid blocks;
+	private int[] randomX, randomY;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		blocks = Benchmarks.generateWorld(worldWidth).getBlocks();
+		SplittableRandom random = new SplittableRandom(Benchmarks.SEED);
+		randomX = new int[RANDOM_CELLS];
+		randomY = new int[RANDOM_CELLS];
+		for(int i = 0; i < RANDOM_CELLS; i++) {
+			randomX[i] = random.nextInt(blocks.getWidth());
+			randomY[i] = random.nextInt(blocks.getHeight());
+		}
+	}
+
+	@Benchmark
+	public int getSequential() {
+		int count = 0;
+		for(int row = 0; row < blocks.getHeight(); row++) {
+			for(int column = 0; column < blocks.getWidth(); column++) {
+				for(int layer = 0; layer < blocks.getLayers(); layer++) {
+					if(blocks.get(layer, column, row) != null) count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int topBlockLayerSequential() {
+		int sum = 0;
+		for(int row = 0; row < blocks.getHeight(); row++) {
+			for(int column = 0; column < blocks.getWidth(); column++) {
+				sum += blocks.getTopBlockLayer(column, row);
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RANDOM_CELLS)
+	public int getRandom() {
+		int count = 0;
+		for(int i = 0; i < RANDOM_CELLS; i++) {
+			Block block = blocks.get(World.LAYER_MAIN, randomX[i], randomY[i]);
+			if(block != null && block.isSolid()) count++;
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RANDOM_CELLS)
+	public int isSolidRandom() {
+		int count = 0;
+		for(int i = 0; i < RANDOM_CELLS; i++) {
+			if(blocks.isSolid(World.LAYER_MAIN, randomX[i], randomY[i])) count++;
+		}
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RANDOM_CELLS)
+	public int solidBlockAdjacentRandom() {
+		int count = 0;
+		for(int i = 0; i < RANDOM_CELLS; i++) {
+			if(blocks.isSolidBlockAdjacent(World.LAYER_BACKGROUND, randomX[i], randomY[i])) count++;
+		}
+		return count;
+	}
+
+	/** Replaces random cells with glass and then restores them **/
+	@Benchmark
+	@OperationsPerInvocation(RANDOM_CELLS * 2)
+	public BlockGrid setRandom() {
+		for(int i = 0; i < RANDOM_CELLS; i++) {
+			Block previous = blocks.set(World.LAYER_MAIN, randomX[i], randomY[i], GlassBlock.INSTANCE);
+			blocks.set(World.LAYER_MAIN, randomX[i], randomY[i], previous);
+		}
+		return blocks;
+	}
+
+	/** Fills a 16 by 16 region of empty sky in every layer and then clears it **/
+	@Benchmark
+	public BlockGrid fill() {
+		int bottom = blocks.getHeight() - 17;
+		blocks.fill(GlassBlock.INSTANCE, 8, bottom, 16, 16);
+		blocks.fill(null, 8, bottom, 16, 16);
+		return blocks;
+	}
+}
@@ -0,0 +1,59 @@
+package ritzow.sandbox.benchmark;
+
+import java.lang.ref.Reference;
+import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.Chunk;
+import ritzow.sandbox.world.World;
+
+/**
+ * Reports the heap used by the blocks of generated worlds, which JMH doesn't measure. Worlds are generated and
+ * kept alive while the used heap is measured before and after, so the result includes the grids, their chunks, and
+ * their palettes along with the small amount of memory used by the rest of each world. Arguments are world widths,
+ * by default 500, 2000, and 20000.
+ * @author Solomon Ritzow
+ */
+public final class BlockGridMemory {
+	private static final int[] DEFAULT_WIDTHS = {500, 2000, 20000};
+
+	/** Copies of small worlds are measured together until they have this many cells, to reduce noise **/
+	private static final long MEASURED_CELLS = 1 << 24;
+
+	public static void main(String[] args) {
+		int[] widths = DEFAULT_WIDTHS;
+		if(args.length > 0) {
+			widths = new int[args.length];
+			for(int i = 0; i < args.length; i++) {
+				widths[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		for(int width : widths) {
+			BlockGrid blocks = Benchmarks.generateWorld(width).getBlocks();
+			long cells = (long)blocks.getWidth() * blocks.getHeight() * blocks.getLayers();
+			World[] worlds = new World[(int)Math.max(1, MEASURED_CELLS / cells)];
+			long before = usedMemory();
+			for(int i = 0; i < worlds.length; i++) {
+				worlds[i] = Benchmarks.generateWorld(width);
+			}
+			long used = (usedMemory() - before) / worlds.length;
+			Reference.reachabilityFence(worlds);
+			int[] chunksByBits = new int[17];
+			for(Chunk chunk : blocks) {
+				chunksByBits[chunk.getBitsPerCell()]++;
+			}
+			System.out.printf("%dx%dx%d blocks: %d KB, %.2f bytes per cell, %d of %d chunks allocated (%d at 1 bit, %d at 2 bits, %d at 4 bits, %d at 8 or more bits)%n",
+				blocks.getWidth(), blocks.getHeight(), blocks.getLayers(), used / 1024, (double)used / cells,
+				blocks.getChunkCount(), blocks.getChunksWide() * blocks.getChunksHigh(),
+				chunksByBits[1], chunksByBits[2], chunksByBits[4], chunksByBits[8] + chunksByBits[16]);
+		}
+	}
+
+	/** @return the size of the heap after repeatedly requesting garbage collection **/
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 4; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
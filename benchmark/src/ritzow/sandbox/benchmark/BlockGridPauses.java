@@ -0,0 +1,103 @@
+package ritzow.sandbox.benchmark;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.storage.OffHeapChunkStore;
+
+/**
+ * Reports the garbage collection time caused by the blocks of a large world, which JMH doesn't measure. The world is
+ * measured with every chunk on the heap, and with every chunk outside of a window around the start of the world
+ * unloaded to an {@link OffHeapChunkStore} in native memory and in a memory mapped file. For each, the time of full
+ * collections, which trace every chunk on the heap, is measured, followed by the collections caused by a workload
+ * that allocates short lived objects while keeping some of them alive. Arguments are the world width, by default
+ * 1000000, and the width in chunks of the window of loaded chunks, by default 64.
+ * @author Solomon Ritzow
+ */
+public final class BlockGridPauses {
+	private static final int FULL_COLLECTIONS = 8, ALLOCATIONS = 50_000_000, RETAINED = 1 << 16;
+
+	public static void main(String[] args) throws IOException {
+		int width = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int loadedChunks = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		measure("heap", Benchmarks.generateWorld(width).getBlocks(), null);
+
+		BlockGrid blocks = Benchmarks.generateWorld(width).getBlocks();
+		try(OffHeapChunkStore store = new OffHeapChunkStore(blocks.getLayers(), blocks.getChunksHigh())) {
+			measure("native", unload(blocks, store, loadedChunks), store);
+		}
+
+		blocks = Benchmarks.generateWorld(width).getBlocks();
+		Path file = Files.createTempFile("chunks", ".dat");
+		try(OffHeapChunkStore store = new OffHeapChunkStore(blocks.getLayers(), blocks.getChunksHigh(), file)) {
+			measure("mapped", unload(blocks, store, loadedChunks), store);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/** @return the grid, with chunks outside of the first {@code loadedChunks} columns unloaded to a store **/
+	private static BlockGrid unload(BlockGrid blocks, OffHeapChunkStore store, int loadedChunks) {
+		blocks.setChunkSource(store);
+		for(int chunkX = loadedChunks; chunkX < blocks.getChunksWide(); chunkX++) {
+			for(int chunkY = 0; chunkY < blocks.getChunksHigh(); chunkY++) {
+				blocks.unload(chunkX, chunkY);
+			}
+		}
+		return blocks;
+	}
+
+	private static void measure(String name, BlockGrid blocks, OffHeapChunkStore store) {
+		long heap = usedMemory();
+		long start = System.nanoTime();
+		for(int i = 0; i < FULL_COLLECTIONS; i++) {
+			System.gc();
+		}
+		double fullMillis = (System.nanoTime() - start) / 1e6 / FULL_COLLECTIONS;
+
+		long count = collectionCount(), time = collectionTime();
+		start = System.nanoTime();
+		Object[] retained = new Object[RETAINED];
+		for(int i = 0; i < ALLOCATIONS; i++) {
+			retained[i & (RETAINED - 1)] = new long[4];
+		}
+		long elapsed = System.nanoTime() - start;
+		Reference.reachabilityFence(retained);
+
+		System.out.printf("%s: %d of %d chunks loaded, %d MB heap, %d MB off heap, %.1f ms per full collection, "
+				+ "workload %d ms with %d collections taking %d ms%n",
+			name, blocks.getChunkCount(), blocks.getChunksWide() * blocks.getChunksHigh(), heap >> 20,
+			store == null ? 0 : store.getMemoryUsage() >> 20, fullMillis, elapsed / 1_000_000,
+			collectionCount() - count, collectionTime() - time);
+		Reference.reachabilityFence(blocks);
+	}
+
+	private static long collectionCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long collectionTime() {
+		long time = 0;
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, collector.getCollectionTime());
+		}
+		return time;
+	}
+
+	/** @return the size of the heap after repeatedly requesting garbage collection **/
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 4; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,41 @@
+package ritzow.sandbox.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import ritzow.sandbox.benchmark.Benchmarks.EntityType;
+import ritzow.sandbox.data.Bytes;
+
+/**
+ * Measures {@link Bytes#compress(byte[])} and {@link Bytes#decompress(ByteBuffer)} of serialized worlds,
+ * which is how worlds are saved and sent to clients.
+ * @author Solomon Ritzow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+	@Param({"500", "2000"})
+	public int worldWidth;
+
+	private byte[] worldData, compressedData;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		worldData = Benchmarks.SERIALIZER.serialize(Benchmarks.populatedWorld(worldWidth, 1000, EntityType.ITEM));
+		compressedData = Bytes.compress(worldData);
+	}
+
+	@Benchmark
+	public byte[] compress() {
+		return Bytes.compress(worldData);
+	}
+
+	@Benchmark
+	public ByteBuffer decompress() {
+		return Bytes.decompress(ByteBuffer.wrap(compressedData));
+	}
+}
@@ -0,0 +1,96 @@
+package ritzow.sandbox.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import ritzow.sandbox.benchmark.Benchmarks.EntityType;
+import ritzow.sandbox.util.Utility;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.entity.Entity;
+
+/**
+ * Measures finding every pair of overlapping entities that interact, which is the broad phase of entity
+ * collision detection in {@link World#update(long)}. {@link #allPairs()} compares every entity with every
+ * later entity, like the update loop did before entities were indexed spatially, and {@link #spatialHash()}
+ * finds the same pairs with {@link World#getEntitiesInRectangle(float, float, float, float, java.util.Collection)},
+ * which searches the same kind of grid as the update. Like the update, only entities that interact with other
+ * entities search the grid. The world is updated until the entities have landed and piled up
+ * on the terrain. The whole update is measured by {@link WorldUpdateBenchmark}.
+ * @author Solomon Ritzow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EntityCollisionBenchmark {
+	private static final long TIMESTEP = Utility.frameRateToFrameTimeNanos(60);
+	private static final int LANDING_UPDATES = 180;
+
+	@Param({"500"})
+	public int worldWidth;
+
+	@Param({"100", "1000", "10000"})
+	public int entities;
+
+	@Param({"ITEM", "PLAYER", "MIXED"})
+	public EntityType entityType;
+
+	private World world;
+	private Entity[] list;
+	private List<Entity> found;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		world = Benchmarks.populatedWorld(worldWidth, entities, entityType);
+		for(int i = 0; i < LANDING_UPDATES; i++) {
+			world.update(TIMESTEP);
+		}
+		list = new Entity[world.entities()];
+		int index = 0;
+		for(Entity e : world) {
+			list[index++] = e;
+		}
+		found = new ArrayList<>();
+	}
+
+	@Benchmark
+	public int allPairs() {
+		int pairs = 0;
+		for(int i = 0; i < list.length; i++) {
+			Entity e = list[i];
+			for(int j = i + 1; j < list.length; j++) {
+				if(collides(e, list[j])) {
+					pairs++;
+				}
+			}
+		}
+		return pairs;
+	}
+
+	@Benchmark
+	public int spatialHash() {
+		int pairs = 0;
+		for(Entity e : list) {
+			if(e.interactsWithEntities()) {
+				world.getEntitiesInRectangle(e.getPositionX(), e.getPositionY(), e.getWidth(), e.getHeight(), found);
+				for(Entity o : found) {
+					//a pair of interacting entities is found from both of them
+					if(o != e) {
+						pairs += o.interactsWithEntities() ? 1 : 2;
+					}
+				}
+				found.clear();
+			}
+		}
+		return pairs / 2;
+	}
+
+	private static boolean collides(Entity e, Entity o) {
+		return (e.interactsWithEntities() || o.interactsWithEntities()) && Utility.intersection(
+			e.getPositionX(), e.getPositionY(), e.getWidth(), e.getHeight(),
+			o.getPositionX(), o.getPositionY(), o.getWidth(), o.getHeight());
+	}
+}
@@ -0,0 +1,43 @@
+package ritzow.sandbox.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.generator.NoiseWorldGenerator;
+import ritzow.sandbox.world.generator.SinusoidWorldGenerator;
+
+/**
+ * Measures generating whole worlds of different widths with {@link NoiseWorldGenerator} on different numbers of
+ * threads, compared to {@link SinusoidWorldGenerator}, which always generates on the calling thread.
+ * @author Solomon Ritzow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GenerationBenchmark {
+	@Param({"500", "2000", "20000"})
+	public int worldWidth;
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private NoiseWorldGenerator noise;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		noise = NoiseWorldGenerator.builder().width(worldWidth).seed(1).parallelism(threads);
+	}
+
+	@Benchmark
+	public World generateNoise() {
+		return noise.generate();
+	}
+
+	@Benchmark
+	public World generateSinusoid() {
+		return SinusoidWorldGenerator.builder().width(worldWidth).baseHeight(140).generate();
+	}
+}
@@ -0,0 +1,80 @@
+package ritzow.sandbox.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import ritzow.sandbox.util.Utility;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.block.DirtBlock;
+import ritzow.sandbox.world.entity.Entity;
+import ritzow.sandbox.world.entity.EntityStore;
+import ritzow.sandbox.world.entity.ItemEntity;
+import ritzow.sandbox.world.item.BlockItem;
+import ritzow.sandbox.world.item.Item;
+
+/**
+ * Measures applying velocity and gravity to every entity once, which is the integration step of
+ * {@link World#update(long)}. {@link #objects()} integrates each entity through its accessors like an update
+ * without an {@link EntityStore}, in a shuffled order like the entity list after entities have been added and
+ * removed. {@link #store()} integrates the same entities in an {@link EntityStore}.
+ * @author Solomon Ritzow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IntegrationBenchmark {
+	private static final long TIMESTEP = Utility.frameRateToFrameTimeNanos(60);
+	private static final float GRAVITY = Utility.convertAccelerationSecondsNanos(9.8f * 3);
+
+	@Param({"100000"})
+	public int entities;
+
+	private Entity[] list;
+	private EntityStore store;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		list = createEntities(entities);
+		store = new EntityStore(entities);
+		for(Entity e : createEntities(entities)) {
+			store.attach(e);
+		}
+	}
+
+	private static Entity[] createEntities(int count) {
+		SplittableRandom random = new SplittableRandom(Benchmarks.SEED);
+		List<Entity> entities = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			Entity e = new ItemEntity<Item>(i, new BlockItem(DirtBlock.INSTANCE));
+			e.setPositionX((float)random.nextDouble(0, 1000));
+			e.setPositionY((float)random.nextDouble(0, 1000));
+			e.setVelocityX((float)random.nextDouble(-1, 1) * 1e-8f);
+			entities.add(e);
+		}
+		Collections.shuffle(entities, new Random(Benchmarks.SEED));
+		return entities.toArray(Entity[]::new);
+	}
+
+	@Benchmark
+	public Entity[] objects() {
+		for(Entity e : list) {
+			e.setPositionX(Math.fma(e.getVelocityX(), TIMESTEP, e.getPositionX()));
+			e.setVelocityY(Math.fma(-GRAVITY, TIMESTEP, e.getVelocityY()));
+			e.setPositionY(Math.fma(e.getVelocityY(), TIMESTEP, e.getPositionY()));
+		}
+		return list;
+	}
+
+	@Benchmark
+	public EntityStore store() {
+		store.integrate(TIMESTEP, GRAVITY);
+		return store;
+	}
+}
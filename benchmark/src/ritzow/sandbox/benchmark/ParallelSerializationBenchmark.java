@@ -0,0 +1,66 @@
+package ritzow.sandbox.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import ritzow.sandbox.benchmark.Benchmarks.EntityType;
+import ritzow.sandbox.data.Bytes;
+import ritzow.sandbox.data.SerializerReaderWriter;
+import ritzow.sandbox.world.World;
+
+/**
+ * Measures serializing and deserializing large worlds on a {@link ForkJoinPool} of different numbers of threads,
+ * which write and read the bands of the block grid and the groups of entities of a world in parallel.
+ * @author Solomon Ritzow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParallelSerializationBenchmark {
+	private static final SerializerReaderWriter SERIALIZER = Benchmarks.SERIALIZER;
+
+	@Param({"2000", "20000"})
+	public int worldWidth;
+
+	@Param({"10000"})
+	public int entities;
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private World world;
+	private byte[] worldData, compressedData;
+	private ForkJoinPool pool;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		world = Benchmarks.populatedWorld(worldWidth, entities, EntityType.ITEM);
+		worldData = SERIALIZER.serialize(world);
+		compressedData = Bytes.compress(worldData);
+		pool = new ForkJoinPool(threads);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public byte[] serializeWorld() {
+		return pool.submit(() -> SERIALIZER.serialize(world)).join();
+	}
+
+	@Benchmark
+	public World deserializeWorld() {
+		return pool.submit(() -> SERIALIZER.<World>deserialize(worldData)).join();
+	}
+
+	@Benchmark
+	public World deserializeCompressedWorld() {
+		return pool.submit(() -> SERIALIZER.getCompressedReader(ByteBuffer.wrap(compressedData)).<World>readObject()).join();
+	}
+}
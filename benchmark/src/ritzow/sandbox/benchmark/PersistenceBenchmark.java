@@ -0,0 +1,106 @@
+package ritzow.sandbox.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+import ritzow.sandbox.benchmark.Benchmarks.EntityType;
+import ritzow.sandbox.data.Bytes;
+import ritzow.sandbox.util.Utility;
+import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.block.DirtBlock;
+import ritzow.sandbox.world.block.GlassBlock;
+import ritzow.sandbox.world.storage.WorldStorage;
+
+/**
+ * Measures saving and loading a world with {@link WorldStorage}, including saving only the chunks changed by a few
+ * block edits, compared to writing and reading the whole world as a single compressed serialized world.
+ * @author Solomon Ritzow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PersistenceBenchmark {
+	@Param({"500", "2000"})
+	public int worldWidth;
+
+	/** Blocks changed before each incremental save **/
+	@Param({"16"})
+	public int edits;
+
+	private World world;
+	private Path directory, legacyFile;
+	private WorldStorage storage;
+	private SplittableRandom random;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		world = Benchmarks.populatedWorld(worldWidth, 1000, EntityType.ITEM);
+		directory = Files.createTempDirectory("sandbox2d-persistence");
+		legacyFile = directory.resolve("world.dat");
+		storage = new WorldStorage(directory.resolve("world"), Benchmarks.SERIALIZER);
+		storage.save(world, Benchmarks.SEED, e -> true);
+		legacySave();
+		random = new SplittableRandom(Benchmarks.SEED);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		storage.close();
+		try(Stream<Path> files = Files.walk(directory)) {
+			for(Path file : (Iterable<Path>)files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void edit() {
+		BlockGrid blocks = world.getBlocks();
+		for(int i = 0; i < edits; i++) {
+			blocks.set(random.nextInt(blocks.getLayers()), random.nextInt(blocks.getWidth()),
+				random.nextInt(blocks.getHeight()), random.nextBoolean() ? DirtBlock.INSTANCE : GlassBlock.INSTANCE);
+		}
+	}
+
+	/** Writes every chunk, as when a world is saved for the first time **/
+	@Benchmark
+	public int saveAll() throws IOException {
+		try(WorldStorage storage = new WorldStorage(directory.resolve("world-all"), Benchmarks.SERIALIZER)) {
+			return storage.save(world, Benchmarks.SEED, e -> true);
+		}
+	}
+
+	/** Writes only the chunks changed by the edits made before the save **/
+	@Benchmark
+	public int saveIncremental() throws IOException {
+		return storage.save(world, Benchmarks.SEED, e -> true);
+	}
+
+	@Benchmark
+	public World load() throws IOException {
+		try(WorldStorage storage = new WorldStorage(directory.resolve("world"), Benchmarks.SERIALIZER)) {
+			return storage.load();
+		}
+	}
+
+	@Benchmark
+	public long legacySave() throws IOException {
+		byte[] data = Bytes.compress(Benchmarks.SERIALIZER.serialize(world));
+		Files.write(legacyFile, data);
+		return data.length;
+	}
+
+	@Benchmark
+	public World legacyLoad() throws IOException {
+		return Utility.loadCompressedObject(legacyFile, Benchmarks.SERIALIZER);
+	}
+}
@@ -0,0 +1,90 @@
+package ritzow.sandbox.benchmark;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import ritzow.sandbox.benchmark.Benchmarks.EntityType;
+import ritzow.sandbox.util.Utility;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.entity.Entity;
+
+/**
+ * Measures how phased updates ({@link World#setUpdateParallelism(int)}) scale with the number of threads.
+ * Before measuring, every trial checks that {@value #CHECKED_UPDATES} phased updates leave every entity in
+ * the same state as the same number of serial updates, and fails if they don't.
+ * @author Solomon Ritzow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PhasedUpdateBenchmark {
+	private static final long TIMESTEP = Utility.frameRateToFrameTimeNanos(60);
+	private static final int CHECKED_UPDATES = 300;
+
+	@Param({"500"})
+	public int worldWidth;
+
+	@Param({"1000", "10000"})
+	public int entities;
+
+	@Param({"PLAYER", "MIXED"})
+	public EntityType entityType;
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private World world;
+
+	@Setup(Level.Trial)
+	public void checkDeterminism() {
+		World serial = Benchmarks.populatedWorld(worldWidth, entities, entityType);
+		World phased = Benchmarks.populatedWorld(worldWidth, entities, entityType);
+		phased.setUpdateParallelism(threads);
+		try {
+			for(int i = 0; i < CHECKED_UPDATES; i++) {
+				serial.update(TIMESTEP);
+				phased.update(TIMESTEP);
+			}
+		} finally {
+			phased.setUpdateParallelism(0);
+		}
+		compare(serial, phased);
+	}
+
+	private static void compare(World serial, World phased) {
+		if(serial.entities() != phased.entities())
+			throw new IllegalStateException("phased update left " + phased.entities() + " entities instead of " + serial.entities());
+		Iterator<Entity> phasedEntities = phased.iterator();
+		for(Entity expected : serial) {
+			Entity actual = phasedEntities.next();
+			if(expected.getID() != actual.getID() ||
+				Float.compare(expected.getPositionX(), actual.getPositionX()) != 0 ||
+				Float.compare(expected.getPositionY(), actual.getPositionY()) != 0 ||
+				Float.compare(expected.getVelocityX(), actual.getVelocityX()) != 0 ||
+				Float.compare(expected.getVelocityY(), actual.getVelocityY()) != 0) {
+				throw new IllegalStateException("phased update diverged from serial update: entity " + expected.getID()
+					+ " (" + expected + ") became entity " + actual.getID() + " (" + actual + ")");
+			}
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		world = Benchmarks.populatedWorld(worldWidth, entities, entityType);
+		world.setUpdateParallelism(threads);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		world.setUpdateParallelism(0);
+	}
+
+	@Benchmark
+	public World update() {
+		world.update(TIMESTEP);
+		return world;
+	}
+}
@@ -0,0 +1,125 @@
+package ritzow.sandbox.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.block.DirtBlock;
+import ritzow.sandbox.world.entity.Entity;
+import ritzow.sandbox.world.entity.ItemEntity;
+import ritzow.sandbox.world.item.BlockItem;
+import ritzow.sandbox.world.item.Item;
+
+/**
+ * Compares adding, removing, looking up, and iterating over the entities in a {@link World} with the
+ * {@link ArrayList} and boxed {@link HashMap} the world used to keep its entities in. The world also indexes
+ * entities spatially as they are added and removed, which is included in {@link #addRemoveWorld()}.
+ * @author Solomon Ritzow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegistryBenchmark {
+	@Param({"1000", "100000"})
+	public int entities;
+
+	/** The number of entities removed and added again by each add and remove benchmark **/
+	@Param({"1000"})
+	public int removals;
+
+	private World world;
+	private List<Entity> list;
+	private Map<Integer, Entity> map;
+	private int[] ids, removed;
+	private Entity[] removedEntities;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		if(removals > entities)
+			throw new IllegalArgumentException("can't remove more entities than there are");
+		world = new World(100, 100);
+		list = new ArrayList<>();
+		map = new HashMap<>();
+		ids = new int[entities];
+		for(int i = 0; i < entities; i++) {
+			Entity e = new ItemEntity<Item>(world.nextEntityID(), new BlockItem(DirtBlock.INSTANCE));
+			e.setPositionX(i % 100);
+			e.setPositionY(50);
+			world.add(e);
+			list.add(e);
+			map.put(e.getID(), e);
+			ids[i] = e.getID();
+		}
+		removed = new SplittableRandom(Benchmarks.SEED).ints(0, entities).distinct().limit(removals)
+			.map(index -> ids[index]).toArray();
+		removedEntities = new Entity[removals];
+	}
+
+	@Benchmark
+	public World addRemoveWorld() {
+		for(int i = 0; i < removed.length; i++) {
+			removedEntities[i] = world.remove(removed[i]);
+		}
+		for(Entity e : removedEntities) {
+			world.add(e);
+		}
+		return world;
+	}
+
+	@Benchmark
+	public List<Entity> addRemoveListAndMap() {
+		for(int i = 0; i < removed.length; i++) {
+			Entity e = map.remove(removed[i]);
+			list.remove(e);
+			removedEntities[i] = e;
+		}
+		for(Entity e : removedEntities) {
+			list.add(e);
+			map.put(e.getID(), e);
+		}
+		return list;
+	}
+
+	@Benchmark
+	public int lookupWorld() {
+		int found = 0;
+		for(int id : ids) {
+			if(world.getEntityFromIdOrNull(id) != null) found++;
+		}
+		return found;
+	}
+
+	@Benchmark
+	public int lookupListAndMap() {
+		int found = 0;
+		for(int id : ids) {
+			if(map.get(id) != null) found++;
+		}
+		return found;
+	}
+
+	@Benchmark
+	public float iterateWorld() {
+		float sum = 0;
+		for(Entity e : world) {
+			sum += e.getPositionX();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public float iterateListAndMap() {
+		float sum = 0;
+		for(Entity e : list) {
+			sum += e.getPositionX();
+		}
+		return sum;
+	}
+}
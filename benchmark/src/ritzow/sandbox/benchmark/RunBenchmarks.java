@@ -0,0 +1,27 @@
+package ritzow.sandbox.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks without any user interaction and writes the results as JSON to benchmark-results.json.
+ * Arguments are parsed as JMH command line options, so a regular expression selects which benchmarks run and
+ * {@code -rff} changes the result file, for example {@code WorldUpdate -p entities=1000 -rff update.json}.
+ * @author Solomon Ritzow
+ */
+public final class RunBenchmarks {
+	private static final String DEFAULT_RESULT_FILE = "benchmark-results.json";
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLine);
+		if(!commandLine.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+		if(!commandLine.getResult().hasValue())
+			options.result(DEFAULT_RESULT_FILE);
+		new Runner(options.build()).run();
+	}
+}
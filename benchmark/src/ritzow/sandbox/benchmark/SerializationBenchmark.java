@@ -0,0 +1,77 @@
+package ritzow.sandbox.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import ritzow.sandbox.benchmark.Benchmarks.BenchmarkPlayerEntity;
+import ritzow.sandbox.benchmark.Benchmarks.EntityType;
+import ritzow.sandbox.data.SerializerReaderWriter;
+import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.entity.PlayerEntity;
+
+/**
+ * Measures serializing and deserializing a {@link World}, its {@link BlockGrid}, and a single
+ * {@link PlayerEntity} with {@link SerializerReaderWriter}.
+ * @author Solomon Ritzow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+	private static final SerializerReaderWriter SERIALIZER = Benchmarks.SERIALIZER;
+
+	@Param({"500", "2000"})
+	public int worldWidth;
+
+	@Param({"1000"})
+	public int entities;
+
+	private World world;
+	private PlayerEntity player;
+	private byte[] worldData, blockData, playerData;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		world = Benchmarks.populatedWorld(worldWidth, entities, EntityType.ITEM);
+		player = new BenchmarkPlayerEntity(world.nextEntityID());
+		world.add(player);
+		worldData = SERIALIZER.serialize(world);
+		blockData = SERIALIZER.serialize(world.getBlocks());
+		playerData = SERIALIZER.serialize(player);
+	}
+
+	@Benchmark
+	public byte[] serializeWorld() {
+		return SERIALIZER.serialize(world);
+	}
+
+	@Benchmark
+	public World deserializeWorld() {
+		return SERIALIZER.deserialize(worldData);
+	}
+
+	@Benchmark
+	public byte[] serializeBlockGrid() {
+		return SERIALIZER.serialize(world.getBlocks());
+	}
+
+	@Benchmark
+	public BlockGrid deserializeBlockGrid() {
+		return SERIALIZER.deserialize(blockData);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public byte[] serializePlayer() {
+		return SERIALIZER.serialize(player);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public PlayerEntity deserializePlayer() {
+		return SERIALIZER.deserialize(playerData);
+	}
+}
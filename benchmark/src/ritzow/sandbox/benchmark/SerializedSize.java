@@ -0,0 +1,49 @@
+package ritzow.sandbox.benchmark;
+
+import ritzow.sandbox.benchmark.Benchmarks.EntityType;
+import ritzow.sandbox.data.Bytes;
+import ritzow.sandbox.data.SerializerReaderWriter;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.entity.Entity;
+
+/**
+ * Reports the size of generated worlds and their entities serialized with the standard and the compact encoding,
+ * before and after compression, which JMH doesn't measure. Each world is updated for ten seconds first, so most of
+ * its items have landed like the items of a world that has been played. Arguments are world widths, by default
+ * 500, 2000, and 20000.
+ * @author Solomon Ritzow
+ */
+public final class SerializedSize {
+	private static final int[] DEFAULT_WIDTHS = {500, 2000, 20000};
+	private static final int ENTITIES = 1000, UPDATES = 600;
+	private static final long UPDATE_NANOSECONDS = 16_666_667;
+
+	public static void main(String[] args) {
+		int[] widths = DEFAULT_WIDTHS;
+		if(args.length > 0) {
+			widths = new int[args.length];
+			for(int i = 0; i < args.length; i++) {
+				widths[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		SerializerReaderWriter serializer = Benchmarks.SERIALIZER;
+		for(int width : widths) {
+			World world = Benchmarks.populatedWorld(width, ENTITIES, EntityType.ITEM);
+			for(int i = 0; i < UPDATES; i++) {
+				world.update(UPDATE_NANOSECONDS);
+			}
+			byte[] standard = serializer.serialize(world), compact = serializer.serializeCompact(world);
+			long standardEntities = 0, compactEntities = 0;
+			for(Entity e : world) {
+				standardEntities += serializer.serialize(e).length;
+				compactEntities += serializer.serializeCompact(e).length;
+			}
+			System.out.printf("width %d with %d items: world %d bytes standard, %d compact (%.0f%% smaller), "
+				+ "compressed %d standard, %d compact; items %.1f bytes standard, %.1f compact%n",
+				width, ENTITIES, standard.length, compact.length, 100 - 100.0 * compact.length / standard.length,
+				Bytes.compress(standard).length, Bytes.compress(compact).length,
+				(double)standardEntities / ENTITIES, (double)compactEntities / ENTITIES);
+		}
+	}
+}
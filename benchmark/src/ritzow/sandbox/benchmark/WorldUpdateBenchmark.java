@@ -0,0 +1,63 @@
+package ritzow.sandbox.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import ritzow.sandbox.benchmark.Benchmarks.EntityType;
+import ritzow.sandbox.util.Utility;
+import ritzow.sandbox.world.World;
+
+/**
+ * Measures a single {@link World#update(long)} for different world sizes, entity counts, entity types
+ * and update modes. A new world is generated for every iteration, so items start each iteration falling
+ * and are asleep for most of it.
+ * @author Solomon Ritzow
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WorldUpdateBenchmark {
+	private static final long TIMESTEP = Utility.frameRateToFrameTimeNanos(60);
+
+	/** How the world updates its entities, see {@link World#setEntityStore(boolean)} and {@link World#setUpdateParallelism(int)} **/
+	public enum UpdateMode {
+		DEFAULT, STORE, PHASED
+	}
+
+	@Param({"500", "2000"})
+	public int worldWidth;
+
+	@Param({"100", "1000", "10000"})
+	public int entities;
+
+	@Param({"ITEM", "PLAYER"})
+	public EntityType entityType;
+
+	@Param({"DEFAULT", "STORE", "PHASED"})
+	public UpdateMode mode;
+
+	private World world;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		world = Benchmarks.populatedWorld(worldWidth, entities, entityType);
+		switch(mode) {
+			case STORE -> world.setEntityStore(true);
+			case PHASED -> world.setUpdateParallelism(Runtime.getRuntime().availableProcessors());
+			case DEFAULT -> {}
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		world.setUpdateParallelism(0);
+	}
+
+	@Benchmark
+	public World update() {
+		world.update(TIMESTEP);
+		return world;
+	}
+}
@@ -30,7 +30,9 @@ import ritzow.sandbox.client.world.entity.ClientPlayerEntity;
 import ritzow.sandbox.data.Bytes;
 import ritzow.sandbox.data.Transportable;
 import ritzow.sandbox.network.NetworkUtility;
+import ritzow.sandbox.util.FixedTimestep;
 import ritzow.sandbox.util.Utility;
+import ritzow.sandbox.world.BlockGrid;
 import ritzow.sandbox.world.World;
 import ritzow.sandbox.world.block.Block;
 import ritzow.sandbox.world.entity.Entity;
@@ -48,6 +50,8 @@ class InWorldContext implements GameTalker {
 	private InteractionController interactionControls;
 	private ClientWorldRendererLightmap worldRenderer;
 	private TrackingCameraController cameraGrip;
+	/** Runs world updates at a fixed rate, or null to update the world once per frame **/
+	private FixedTimestep timestep;
 	private ClientPlayerEntity player;
 	private GuiElement overlayGUI;
 	private Holder<Icon> blockGUI;
@@ -55,6 +59,9 @@ class InWorldContext implements GameTalker {
 	private World world;
 
 	private ByteBuffer worldDownloadBuffer;
+	/** Blocks being received that will be added to the right of the world, and their position **/
+	private ByteBuffer worldExtensionBuffer;
+	private int worldExtensionX, worldExtensionY;
 	private final DoubleConsumer downloadProgressAction;
 	private CompletableFuture<World> worldBuildTask;
 
@@ -148,7 +155,9 @@ class InWorldContext implements GameTalker {
 					downloadProgressAction.accept(worldDownloadBuffer.put(data).position()/(double)worldDownloadBuffer.limit());
 					if(!worldDownloadBuffer.hasRemaining()) {
 						log().info("Received all world data");
-						worldBuildTask = CompletableFuture.supplyAsync(this::buildWorld);
+						//the world is read on another thread, which reads its sections in parallel
+						worldBuildTask = SerializationProvider.getProvider()
+							.deserializeAsync(worldDownloadBuffer.flip(), COMPRESS_WORLD_DATA);
 					}
 				} else {
 					throw new ServerBadDataException("Received incorrect message type " + type + " during world download");
@@ -167,6 +176,9 @@ class InWorldContext implements GameTalker {
 		player = getEntity(playerID);
 		cameraGrip = new TrackingCameraController(2.5f, player.getWidth() / 20f, player.getWidth() / 2f);
 		worldRenderer = new ClientWorldRendererLightmap(GameState.display(), cameraGrip.getCamera(), world);
+		if(StandardClientOptions.TICK_RATE > 0) {
+			timestep = new FixedTimestep(StandardClientOptions.TICK_RATE, MAX_UPDATE_TIMESTEP);
+		}
 		interactionControls = new InteractionController();
 
 		GuiElement fpsBg = new Scaler(new Icon(GameModels.MODEL_SKY), 0.25f);
@@ -240,12 +252,18 @@ class InWorldContext implements GameTalker {
 	}
 
 	private void updateRender(Display display, long deltaTime) {
+		float interpolation = 1.0f;
 		if(!StandardClientOptions.DISABLE_CLIENT_UPDATE) {
-			world.update(deltaTime); //TODO should still have a max update step
+			if(timestep == null) {
+				world.update(deltaTime); //TODO should still have a max update step
+			} else {
+				timestep.update(world, System.nanoTime());
+				interpolation = timestep.interpolation();
+			}
 		}
-		cameraGrip.update(controlsContext, player, AudioSystem.getDefault(), deltaTime);
+		cameraGrip.update(controlsContext, player, interpolation, AudioSystem.getDefault(), deltaTime);
 		int width = display.width(), height = display.height();
-		worldRenderer.render(RenderManager.DISPLAY_BUFFER, width, height, computeDaylight());
+		worldRenderer.render(RenderManager.DISPLAY_BUFFER, width, height, computeDaylight(), interpolation);
 		interactionControls.updateRender(display, RenderManager.DISPLAY_BUFFER, controlsContext, GameState.modelRenderer(), cameraGrip.getCamera(), this, world, player);
 		GraphicsUtility.checkErrors();
 		framerateDisplay.setContent(Utility.frameTimeToString(GameLoop.getLastUpdateTime()));
@@ -266,8 +284,9 @@ class InWorldContext implements GameTalker {
 			case TYPE_SERVER_ENTITY_UPDATE -> processUpdateEntity(data);
 			case TYPE_SERVER_CREATE_ENTITY -> processAddEntity(data);
 			case TYPE_SERVER_DELETE_ENTITY -> processRemoveEntity(data);
-			case TYPE_SERVER_REMOVE_BLOCK -> processServerRemoveBlock(data);
-			case TYPE_SERVER_PLACE_BLOCK -> processServerPlaceBlock(data);
+			case TYPE_SERVER_BLOCK_CHANGES -> processServerBlockChanges(data);
+			case TYPE_SERVER_WORLD_EXTEND -> processWorldExtend(data);
+			case TYPE_SERVER_WORLD_DATA -> processWorldExtensionData(data);
 			case TYPE_CLIENT_PLAYER_STATE -> processPlayerState(data);
 			case TYPE_SERVER_CLIENT_DISCONNECT -> processServerDisconnect(data);
 			case TYPE_SERVER_CLIENT_SLOT_USE_COOLDOWN -> processBlockBreakCooldown(data);
@@ -324,23 +343,45 @@ class InWorldContext implements GameTalker {
 		}
 	}
 
-	private void processServerRemoveBlock(ByteBuffer data) {
-		int x = data.getInt(), y = data.getInt();
-		int layer = world.getBlocks().getTopBlockLayer(x, y);
-		if(layer >= 0) {
-			Block block = world.getBlocks().get(layer, x, y);
-			ClientBlockProperties prev = (ClientBlockProperties)world.getBlocks().set(layer, x, y, null);
-			if(prev != null) prev.onBreak(world, world.getBlocks(), cameraGrip.getCamera(), x, y);
-			worldRenderer.updateLighting(x, y);
+	/** Replaces the blocks of changed cells, lighting is updated from the block grid's change journal **/
+	private void processServerBlockChanges(ByteBuffer data) {
+		BlockGrid blocks = world.getBlocks();
+		for(int count = data.getShort(); count > 0; count--) {
+			int x = data.getInt(), y = data.getInt();
+			if(!blocks.isValid(x, y))
+				throw new ServerBadDataException("server sent invalid block coordinates x=" + x + " y=" + y);
+			for(int layer = 0; layer < blocks.getLayers(); layer++) {
+				ClientBlockProperties block = deserialize(data);
+				Block previous = blocks.get(layer, x, y);
+				if(previous == null ? block != null : block == null || previous.getClass() != block.getClass()) {
+					blocks.set(layer, x, y, block);
+					if(previous != null) ((ClientBlockProperties)previous).onBreak(world, blocks, cameraGrip.getCamera(), x, y);
+					if(block != null) block.onPlace(world, blocks, cameraGrip.getCamera(), x, y);
+				}
+			}
 		}
 	}
 
-	private void processServerPlaceBlock(ByteBuffer data) {
-		int x = data.getInt(), y = data.getInt();
-		ClientBlockProperties newBlock = deserialize(data);
-		world.getBlocks().set(Utility.getBlockPlaceLayer(world.getBlocks(), x, y), x, y, newBlock);
-		newBlock.onPlace(world, world.getBlocks(), cameraGrip.getCamera(), x, y);
-		worldRenderer.updateLighting(x, y);
+	private void processWorldExtend(ByteBuffer data) {
+		worldExtensionX = data.getInt();
+		worldExtensionY = data.getInt();
+		worldExtensionBuffer = ByteBuffer.allocate(data.getInt());
+	}
+
+	private void processWorldExtensionData(ByteBuffer data) {
+		if(worldExtensionBuffer == null)
+			throw new ServerBadDataException("Received world data without a world extension");
+		if(!worldExtensionBuffer.put(data).hasRemaining()) {
+			BlockGrid region = deserialize(COMPRESS_WORLD_DATA ?
+				Bytes.decompress(worldExtensionBuffer.flip()) : worldExtensionBuffer.flip());
+			worldExtensionBuffer = null;
+			BlockGrid blocks = world.getBlocks();
+			int right = worldExtensionX + region.getWidth();
+			if(right > blocks.getWidth()) blocks.extend(right);
+			blocks.copy(region, 0, 0, worldExtensionX, worldExtensionY, region.getWidth(),
+				Math.min(region.getHeight(), blocks.getHeight() - worldExtensionY));
+			worldRenderer.updateWorldSize();
+		}
 	}
 
 	@SuppressWarnings("unchecked")
@@ -372,15 +413,11 @@ class InWorldContext implements GameTalker {
 				e.setPositionY(data.getFloat());
 				e.setVelocityX(data.getFloat());
 				e.setVelocityY(data.getFloat());
+				world.wake(e);
 			}
 		}
 	}
 
-	private World buildWorld() {
-		return SerializationProvider.getProvider().deserialize(COMPRESS_WORLD_DATA ?
-			Bytes.decompress(worldDownloadBuffer.flip()) : worldDownloadBuffer.flip());
-	}
-
 	@Override
 	public void sendBombThrow(float angle) {
 		byte[] packet = new byte[2 + 4];
@@ -25,6 +25,8 @@ public class StandardClientOptions {
 	public static final boolean DEBUG = get("debug", false, Boolean::parseBoolean);
 	public static final boolean DEBUG_OPENGL = get("debug_opengl", false, Boolean::parseBoolean);
 	public static final boolean DISABLE_CLIENT_UPDATE = get("disable_client_update", false, Boolean::parseBoolean);
+	/** World updates per second, 0 to update the world once per frame by the frame time **/
+	public static final int TICK_RATE = get("tick_rate", 0, Integer::parseInt);
 	public static final boolean LEFTY = get("lefty", false, Boolean::parseBoolean);
 
 	private static long frameTimeLimit(String value) {
@@ -28,6 +28,12 @@ public final class OpenGLByteTexture extends OpenGLTexture {
 		glTexImage2D(GL_TEXTURE_2D, 0, GL_R8UI, width, height, 0, GL_RED_INTEGER, GL_UNSIGNED_BYTE, 0);
 	}
 
+	/** Resizes the texture and replaces its contents with {@code data} **/
+	public void setData(ByteBuffer data, int width, int height) {
+		glBindTexture(GL_TEXTURE_2D, id);
+		glTexImage2D(GL_TEXTURE_2D, 0, GL_R8UI, width, height, 0, GL_RED_INTEGER, GL_UNSIGNED_BYTE, data);
+	}
+
 	public void setPixel(int x, int y, byte value) {
 		try(MemoryStack stack = MemoryStack.stackPush()) {
 			ByteBuffer val = stack.bytes(value);
@@ -2,7 +2,11 @@ package ritzow.sandbox.client.graphics;
 
 public interface Renderable {
 	//TODO make a special EntityRenderer interface with rendering commads that are controlled by the world renderer
-	void render(ModelRenderer program, float exposure);
+	/**
+	 * @param interpolation the fraction of the time between the last two world updates that has elapsed,
+	 * used to render moving objects between their previous and current positions.
+	 */
+	void render(ModelRenderer program, float exposure, float interpolation);
 	float getWidth();
 	float getHeight();
 }
@@ -18,7 +18,11 @@ public final class TrackingCameraController {
 		this.maxZoom = maxZoom;
 	}
 
-	public void update(ControlsQuery controls, Entity target, AudioSystem audio, long nanoseconds) {
+	/**
+	 * Zooms the camera and moves it to the target's position interpolated by {@code interpolation},
+	 * see {@link Entity#getInterpolatedPositionX(float)}.
+	 */
+	public void update(ControlsQuery controls, Entity target, float interpolation, AudioSystem audio, long nanoseconds) {
 		if(controls.isNewlyPressed(Control.ZOOM_RESET)) {
 			resetZoom();
 		} else if(controls.isPressed(Control.ZOOM_INCREASE)) {
@@ -27,8 +31,8 @@ public final class TrackingCameraController {
 			computeZoom(-zoomSpeedNanos, nanoseconds);
 		}
 
-		float posX = target.getPositionX();
-		float posY = target.getPositionY();
+		float posX = target.getInterpolatedPositionX(interpolation);
+		float posY = target.getInterpolatedPositionY(interpolation);
 		camera.setPositionX(posX);
 		camera.setPositionY(posY);
 		audio.setPosition(posX, posY);
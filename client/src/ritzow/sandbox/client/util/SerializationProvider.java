@@ -22,7 +22,8 @@ public final class SerializationProvider {
 			.registerRead(Protocol.DATA_GLASS_BLOCK, ClientGlassBlock::getSingleton)
 			.registerRead(Protocol.DATA_PLAYER_ENTITY, ClientPlayerEntity::new)
 			.registerRead(Protocol.DATA_INVENTORY, Inventory::new)
-			.registerRead(Protocol.DATA_ITEM_ENTITY, ClientItemEntity::new);
+			.registerRead(Protocol.DATA_ITEM_ENTITY, ClientItemEntity::new)
+			.freeze();
 
 	public static SerializerReaderWriter getProvider() {
 		return provider;
@@ -9,6 +9,7 @@ import ritzow.sandbox.client.util.ClientUtility;
 import ritzow.sandbox.client.world.block.ClientBlockProperties;
 import ritzow.sandbox.util.Utility;
 import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.ChangeJournal;
 import ritzow.sandbox.world.World;
 import ritzow.sandbox.world.block.Block;
 import ritzow.sandbox.world.entity.Entity;
@@ -21,14 +22,19 @@ public final class ClientWorldRendererLightmap {
 	private final World world;
 	private final Camera camera;
 	private final List<Lit> lights;
+	private final List<Entity> visibleEntities;
 	private final OpenGLByteTexture solidMap, shadingMap;
 	private final OpenGLTexture lightOverlay;
 	private final Framebuffer shadingFramebuffer;
+	/** Reads the blocks changed since the solid map was last updated **/
+	private final ChangeJournal.Cursor blockChanges;
 
 	public ClientWorldRendererLightmap(Display display, Camera camera, World world) {
 		this.camera = camera;
 		this.world = world;
+		this.blockChanges = world.getBlocks().getJournal().subscribe();
 		this.lights = new ArrayList<>();
+		this.visibleEntities = new ArrayList<>();
 		this.solidMap = new OpenGLByteTexture(buildSolidMap(world.getBlocks()), world.getBlocks().getWidth(), world.getBlocks().getHeight());
 		this.shadingMap = new OpenGLByteTexture(world.getBlocks().getWidth(), world.getBlocks().getHeight());
 		this.lightOverlay = new OpenGLTexture(display.width(), display.height());
@@ -48,6 +54,15 @@ public final class ClientWorldRendererLightmap {
 		return buffer.flip();
 	}
 
+	/** Resizes the light maps to the size of the world's blocks after they have been extended **/
+	public void updateWorldSize() {
+		BlockGrid blocks = world.getBlocks();
+		solidMap.setData(buildSolidMap(blocks), blocks.getWidth(), blocks.getHeight());
+		blockChanges.skip();
+		shadingMap.setSize(blocks.getWidth(), blocks.getHeight());
+		GraphicsUtility.checkErrors();
+	}
+
 	public void updateFramebuffers(int width, int height) {
 		lightOverlay.setSize(width, height);
 	}
@@ -60,20 +75,35 @@ public final class ClientWorldRendererLightmap {
 		lights.remove(entity);
 	}
 
-	//TODO needs to know more information
-	public void updateLighting(int x, int y) {
-		solidMap.setPixel(x, y, light(x, y));
+	/** Updates the solid map where blocks have changed, or rebuilds it if changes were lost **/
+	private void updateLighting() {
+		if(blockChanges.hasChanges() && !blockChanges.drain(this::updateLighting)) {
+			BlockGrid blocks = world.getBlocks();
+			solidMap.setData(buildSolidMap(blocks), blocks.getWidth(), blocks.getHeight());
+			GraphicsUtility.checkErrors();
+		}
+	}
+
+	private void updateLighting(int x, int y, int width, int height) {
+		for(int row = y; row < y + height; row++) {
+			for(int column = x; column < x + width; column++) {
+				solidMap.setPixel(column, row, light(column, row));
+			}
+		}
 	}
 
+	/** Blocks in the main layer block light, background blocks and empty cells don't **/
 	private byte light(int x, int y) {
-		int layer = world.getBlocks().getTopBlockLayer(x, y);
-		return switch(layer) {
-			case BlockGrid.INVALID_LAYER, World.LAYER_BACKGROUND -> (byte)255;
-			default -> (byte)0;
-		};
+		return world.getBlocks().isBlock(World.LAYER_MAIN, x, y) ? (byte)0 : (byte)255;
 	}
 
-	public void render(Framebuffer target, final int width, final int height, float daylight) {
+	/**
+	 * Renders the world with entities drawn between their positions before and after the last world update.
+	 * @param interpolation the fraction of the way from the previous to the current entity positions.
+	 */
+	public void render(Framebuffer target, final int width, final int height, float daylight, float interpolation) {
+		updateLighting();
+
 		//get visible world coordinates
 		float worldLeft = ClientUtility.getViewLeftBound(camera, width, height);
 		float worldRight = ClientUtility.getViewRightBound(camera, width, height);
@@ -128,7 +158,8 @@ public final class ClientWorldRendererLightmap {
 			worldTop,
 			width,
 			height,
-			daylight
+			daylight,
+			interpolation
 		);
 
 		//for now render to final output
@@ -187,26 +218,25 @@ public final class ClientWorldRendererLightmap {
 		RenderManager.BLOCK_RENDERER.finish();
 	}
 
-	private void renderEntities(float worldLeft, float worldBottom, float worldRight, float worldTop, int width, int height, float daylight) {
+	private void renderEntities(float worldLeft, float worldBottom, float worldRight, float worldTop, int width, int height, float daylight, float interpolation) {
 		RenderManager.MODEL_RENDERER.prepare();
 
 		//load the view transformation
 		RenderManager.MODEL_RENDERER.loadViewMatrix(camera, width, height);
 
-		//render the entities
-		for(Entity e : world) {
-			//pre-compute variables
-			float posX = e.getPositionX();
-			float posY = e.getPositionY();
-			float halfWidth = e.getWidth() / 2;
-			float halfHeight = e.getHeight() / 2;
-
-			//check if the entity is visible inside the viewport and render it
-			if(posX < worldRight + halfWidth && posX > worldLeft - halfWidth && posY < worldTop + halfHeight && posY > worldBottom - halfHeight) {
-				((Renderable)e).render(RenderManager.MODEL_RENDERER, daylight);
-			}
+		//render the entities that are visible inside the viewport
+		world.getEntitiesInRectangle(
+			(worldLeft + worldRight) / 2,
+			(worldBottom + worldTop) / 2,
+			worldRight - worldLeft,
+			worldTop - worldBottom,
+			visibleEntities
+		);
+		for(Entity e : visibleEntities) {
+			((Renderable)e).render(RenderManager.MODEL_RENDERER, daylight, interpolation);
 		}
+		visibleEntities.clear();
 
 		RenderManager.MODEL_RENDERER.flush();
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
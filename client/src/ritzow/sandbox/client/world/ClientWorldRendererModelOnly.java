@@ -167,7 +167,7 @@ public final class ClientWorldRendererModelOnly {
 
 			//check if the entity is visible inside the viewport and render it
 			if(posX < worldRight + halfWidth && posX > worldLeft - halfWidth && posY < worldTop + halfHeight && posY > worldBottom - halfHeight) {
-				((Renderable)e).render(modelProgram, computeExposure(posX, posY, topIndex, rightIndex) * daylight);
+				((Renderable)e).render(modelProgram, computeExposure(posX, posY, topIndex, rightIndex) * daylight, 1.0f);
 			}
 		}
 	}
@@ -222,7 +222,7 @@ public final class ClientWorldRendererTraced {
 
 			//check if the entity is visible inside the viewport and render it
 			if(posX < worldRight + halfWidth && posX > worldLeft - halfWidth && posY < worldTop + halfHeight && posY > worldBottom - halfHeight) {
-				((Renderable)e).render(modelProgram, /*computeExposure(posX, posY, topIndex, rightIndex)*/1);
+				((Renderable)e).render(modelProgram, /*computeExposure(posX, posY, topIndex, rightIndex)*/1, 1.0f);
 			}
 		}
 
@@ -19,9 +19,7 @@ public final class ClientItemEntity<I extends Item> extends ItemEntity<I> implem
 	}
 
 	public ClientItemEntity(int entityID, I item, float x, float y) {
-		super(entityID, item);
-		this.positionX = x;
-		this.positionY = y;
+		super(entityID, item, x, y);
 		this.rotationVelocity = getRotationalVelocity();
 		this.rotation = 0;
 	}
@@ -37,14 +35,14 @@ public final class ClientItemEntity<I extends Item> extends ItemEntity<I> implem
 	}
 
 	@Override
-	public void render(ModelRenderer renderer, float exposure) {
+	public void render(ModelRenderer renderer, float exposure, float interpolation) {
 		Graphics g = ((Graphics)item);
 		renderer.queueRender(
 			g.getModel(),
 			g.getOpacity(),
 			exposure,
-			positionX,
-			positionY,
+			getInterpolatedPositionX(interpolation),
+			getInterpolatedPositionY(interpolation),
 			g.getScaleX() * 0.5f,
 			g.getScaleY() * 0.5f,
 			g.getRotation() + rotation
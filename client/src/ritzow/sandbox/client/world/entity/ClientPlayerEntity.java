@@ -19,13 +19,15 @@ public class ClientPlayerEntity extends PlayerEntity implements Renderable, Lit
 	}
 
 	@Override
-	public void render(ModelRenderer renderer, float exposure) {
+	public void render(ModelRenderer renderer, float exposure, float interpolation) {
+		float posX = getInterpolatedPositionX(interpolation);
+		float posY = getInterpolatedPositionY(interpolation);
 		renderer.queueRender(
 			GameModels.MODEL_GREEN_FACE,
 			1.0f,
 			exposure,
-			positionX,
-			positionY + (down ? 0 : SIZE_SCALE / 2),
+			posX,
+			posY + (down ? 0 : SIZE_SCALE / 2),
 			SIZE_SCALE,
 			SIZE_SCALE,
 			0.0f
@@ -35,8 +37,8 @@ public class ClientPlayerEntity extends PlayerEntity implements Renderable, Lit
 				GameModels.MODEL_BLUE_SQUARE,
 				1.0f,
 				exposure,
-				positionX,
-				positionY - SIZE_SCALE / 2,
+				posX,
+				posY - SIZE_SCALE / 2,
 				SIZE_SCALE,
 				SIZE_SCALE,
 				0
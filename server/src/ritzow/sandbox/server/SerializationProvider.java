@@ -22,7 +22,8 @@ public class SerializationProvider {
 			.register(Protocol.DATA_GLASS_BLOCK, GlassBlock.class, reader -> GlassBlock.INSTANCE)
 			.register(Protocol.DATA_ITEM_ENTITY, ItemEntity.class, ItemEntity::new)
 			.registerWrite(Protocol.DATA_INVENTORY, Inventory.class)
-			.registerWrite(Protocol.DATA_PLAYER_ENTITY, ServerPlayerEntity.class);
+			.registerWrite(Protocol.DATA_PLAYER_ENTITY, ServerPlayerEntity.class)
+			.freeze();
 
 	public static SerializerReaderWriter getProvider() {
 		return provider;
@@ -0,0 +1,38 @@
+package ritzow.sandbox.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+class ServerOptions {
+	static final Path OPTIONS_PATH = Path.of("server-options.txt");
+	private static final Map<String, String> OPTIONS = loadOptions();
+
+	private static Map<String, String> loadOptions() {
+		try {
+			return Files.lines(OPTIONS_PATH, StandardCharsets.UTF_8)
+				.filter(line -> !line.isBlank() && !line.stripLeading().startsWith("#"))
+				.collect(Collectors.toMap(
+					line -> line.substring(0, line.indexOf('=')).strip(),
+					line -> line.substring(line.indexOf('=') + 1).strip()
+				));
+		} catch(NoSuchFileException e) {
+			return Map.of();
+		} catch(IOException e) {
+			e.printStackTrace();
+			return Map.of();
+		}
+	}
+
+	static <T> T get(String option, T defaultValue, Function<String, T> converter) {
+		var val = OPTIONS.getOrDefault(option, "");
+		return val.isEmpty() ? defaultValue : converter.apply(val);
+	}
+
+	private ServerOptions() {}
+}
@@ -0,0 +1,31 @@
+package ritzow.sandbox.server;
+
+import static ritzow.sandbox.server.ServerOptions.get;
+
+public class StandardServerOptions {
+
+	//World simulation
+	/** Threads used to update the world, 0 for the default single threaded update, see World.setUpdateParallelism **/
+	public static final int UPDATE_THREADS = get("update_threads", 0, Integer::parseInt);
+	/** World updates per second, 0 to update the world by the time elapsed each server update, see GameServer.setTickRate **/
+	public static final int TICK_RATE = get("tick_rate", 0, Integer::parseInt);
+
+	//World generation
+	/** Seed of newly generated worlds **/
+	public static final long WORLD_SEED = get("world_seed", 0L, Long::parseLong);
+	/** Terrain of new chunks, "noise" for NoiseWorldGenerator or "sinusoid" for SinusoidWorldGenerator **/
+	public static final String WORLD_GENERATOR = get("world_generator", "noise", String::valueOf);
+	/** Threads used to generate chunks in the background **/
+	public static final int GENERATOR_THREADS = get("generator_threads",
+		Math.max(1, Runtime.getRuntime().availableProcessors() / 2), Integer::parseInt);
+	/** Columns of chunks generated ahead of the rightmost player, see ChunkManager **/
+	public static final int GENERATE_DISTANCE = get("generate_distance", 4, Integer::parseInt);
+
+	//World storage
+	/** Seconds between saves of the chunks changed since the last save, 0 to only save when the server stops **/
+	public static final int AUTOSAVE_INTERVAL = get("autosave_interval", 300, Integer::parseInt);
+	/** Chunks from a player within which entities are simulated, -1 to simulate the whole world, see ChunkLoader **/
+	public static final int CHUNK_LOAD_RADIUS = get("chunk_load_radius", 4, Integer::parseInt);
+	/** Megabytes of chunks kept loaded before saved chunks away from players are unloaded **/
+	public static final int CHUNK_MEMORY_BUDGET = get("chunk_memory_budget", 64, Integer::parseInt);
+}
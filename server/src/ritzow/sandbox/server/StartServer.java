@@ -5,23 +5,48 @@ import java.net.BindException;
 import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
-import ritzow.sandbox.data.Bytes;
+import java.util.stream.Stream;
 import ritzow.sandbox.network.NetworkUtility;
 import ritzow.sandbox.network.Protocol;
 import ritzow.sandbox.server.network.GameServer;
+import ritzow.sandbox.server.world.ChunkLoader;
+import ritzow.sandbox.server.world.ChunkManager;
 import ritzow.sandbox.util.Utility;
 import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.entity.Entity;
 import ritzow.sandbox.world.entity.ItemEntity;
+import ritzow.sandbox.world.entity.PlayerEntity;
+import ritzow.sandbox.world.generator.ChunkGenerator;
+import ritzow.sandbox.world.generator.NoiseWorldGenerator;
 import ritzow.sandbox.world.generator.SinusoidWorldGenerator;
+import ritzow.sandbox.world.storage.WorldStorage;
 
 class StartServer {
-	private static final Path SAVE_FILE = Path.of("world.dat");
+	private static final Path SAVE_DIRECTORY = Path.of("world");
+	/** The file worlds were saved to before they were stored in region files, converted when the server starts **/
+	private static final Path LEGACY_SAVE_FILE = Path.of("world.dat"), CONVERTED_SAVE_FILE = Path.of("world.dat.old");
 	private static final long FRAME_TIME_LIMIT = Utility.frameRateToFrameTimeNanos(120);
-	private static final int WIDTH = 200, HEIGHT = 200;
+	private static final long AUTOSAVE_INTERVAL = StandardServerOptions.AUTOSAVE_INTERVAL * 1_000_000_000L;
+	/** The width in chunks of new worlds, which are extended as players explore **/
+	private static final int INITIAL_CHUNKS_WIDE = 8, HEIGHT = 200;
 
 	private static GameServer server;
-	private static boolean save = true;
+	private static WorldStorage storage;
+	private static long seed, lastSave;
+	private static boolean save = true, delete;
+	/** Writes world snapshots so that saving doesn't delay world updates **/
+	private static final ExecutorService saveThread = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "World Saver");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static Future<?> pendingSave;
 
 	public static void main(String[] args) throws IOException {
 		InetSocketAddress bind = args.length > 0 ?
@@ -34,9 +59,20 @@ class StartServer {
 				long start = System.nanoTime();
 				parser.update();
 				server.update();
+				if(AUTOSAVE_INTERVAL > 0 && start - lastSave > AUTOSAVE_INTERVAL && server.isOpen()) {
+					saveInBackground(server.world());
+				}
 				Utility.limitFramerate(start, FRAME_TIME_LIMIT);
 			}
-			saveWorld(server.world());
+			waitForSave();
+			saveThread.shutdown();
+			if(save) {
+				saveWorld(server.world());
+			} else {
+				System.out.println("Server stopped without saving to file.");
+			}
+			storage.close();
+			if(delete) deleteWorld();
 		} catch(BindException e) {
 			System.out.println("Couldn't start server on address " + NetworkUtility.formatAddress(bind));
 		}
@@ -46,33 +82,122 @@ class StartServer {
 		server = new GameServer(bind);
 		System.out.println("Started server on " + NetworkUtility.formatAddress(server.getAddress()) + ".");
 		long time = System.nanoTime();
-		boolean loadFromFile = Files.exists(SAVE_FILE);
-		System.out.print((loadFromFile ? "Loading" : "Generating") + " world... ");
-		server.setCurrentWorld(loadFromFile ? loadWorld(SAVE_FILE) : SinusoidWorldGenerator.builder()
-			.width(WIDTH)
-			.baseHeight(HEIGHT)
-			.generate());
+		storage = new WorldStorage(SAVE_DIRECTORY, SerializationProvider.getProvider());
+		World world;
+		if(WorldStorage.exists(SAVE_DIRECTORY)) {
+			System.out.print("Loading world... ");
+			//chunks are read as they are accessed when the chunk loader can unload them again
+			world = storage.load(StandardServerOptions.CHUNK_LOAD_RADIUS < 0);
+			seed = storage.getSeed();
+		} else if(Files.exists(LEGACY_SAVE_FILE)) {
+			System.out.print("Converting world " + LEGACY_SAVE_FILE + " to " + SAVE_DIRECTORY + "... ");
+			world = loadLegacyWorld(LEGACY_SAVE_FILE);
+			seed = StandardServerOptions.WORLD_SEED;
+			storage.save(world, seed, StartServer::isSaved);
+			Files.move(LEGACY_SAVE_FILE, CONVERTED_SAVE_FILE);
+		} else {
+			System.out.print("Generating world... ");
+			world = null;
+			seed = StandardServerOptions.WORLD_SEED;
+		}
+		ChunkManager chunks = new ChunkManager(
+			generator(StandardServerOptions.WORLD_GENERATOR),
+			seed,
+			StandardServerOptions.GENERATOR_THREADS,
+			StandardServerOptions.GENERATE_DISTANCE
+		);
+		server.setChunkManager(chunks);
+		if(StandardServerOptions.CHUNK_LOAD_RADIUS >= 0) {
+			server.setChunkLoader(new ChunkLoader(storage, StandardServerOptions.CHUNK_LOAD_RADIUS,
+				StandardServerOptions.CHUNK_MEMORY_BUDGET * 1024L * 1024L));
+		}
+		server.setCurrentWorld(world == null ? chunks.generate(INITIAL_CHUNKS_WIDE) : world);
+		server.world().setUpdateParallelism(StandardServerOptions.UPDATE_THREADS);
+		server.setTickRate(StandardServerOptions.TICK_RATE);
+		lastSave = System.nanoTime();
 		System.out.println("took " + Utility.formatTime(Utility.nanosSince(time)) + ".");
 	}
 
-	public static World loadWorld(Path file) throws IOException {
-		return SerializationProvider.getProvider().deserialize(Utility.loadCompressedFile(file));
+	/** Reads a world saved as a single compressed serialized world **/
+	public static World loadLegacyWorld(Path file) throws IOException {
+		return Utility.loadCompressedObject(file, SerializationProvider.getProvider());
+	}
+
+	private static ChunkGenerator generator(String name) {
+		return switch(name) {
+			case "noise" -> NoiseWorldGenerator.builder().height(HEIGHT);
+			case "sinusoid" -> SinusoidWorldGenerator.builder().baseHeight(HEIGHT);
+			default -> throw new IllegalArgumentException("unknown world generator " + name);
+		};
+	}
+
+	/** Players are recreated when clients connect and are not saved **/
+	private static boolean isSaved(Entity entity) {
+		return !(entity instanceof PlayerEntity);
 	}
 
+	/** Saves the chunks changed since the last save **/
 	private static void saveWorld(World world) {
-		if(save) {
+		long start = System.nanoTime();
+		try {
+			int chunks = storage.save(world, seed, StartServer::isSaved);
+			System.out.println("Saved " + chunks + " chunks to " + SAVE_DIRECTORY + " in "
+				+ Utility.formatTime(Utility.nanosSince(start)) + ".");
+		} catch(IOException e) {
+			printSaveError(e);
+		}
+		lastSave = System.nanoTime();
+	}
+
+	/**
+	 * Captures the chunks changed since the last save and the state of the entities on the server thread, and then
+	 * serializes and writes them on the save thread.
+	 */
+	private static void saveInBackground(World world) {
+		lastSave = System.nanoTime();
+		if(pendingSave != null && !pendingSave.isDone()) {
+			System.out.println("Skipped save, the previous save hasn't finished.");
+			return;
+		}
+		WorldStorage.Snapshot snapshot = storage.snapshot(world, seed, StartServer::isSaved);
+		long serverTime = Utility.nanosSince(lastSave);
+		pendingSave = saveThread.submit(() -> {
+			long start = System.nanoTime();
 			try {
-				System.out.print("Saving world... ");
-				byte[] serialized = Bytes.compress(SerializationProvider.getProvider().serialize(world));
-				Files.write(SAVE_FILE, serialized);
-				System.out.println("world saved to " + Utility.formatSize(serialized.length) + ".");
+				storage.save(snapshot);
+				System.out.println("Saved " + snapshot.getChunkCount() + " chunks and " + snapshot.getEntityCount()
+					+ " entities to " + SAVE_DIRECTORY + " in " + Utility.formatTime(Utility.nanosSince(start))
+					+ ", server thread paused for " + Utility.formatTime(serverTime) + ".");
 			} catch(IOException e) {
-				System.out.println("Error while saving world to file '" + SAVE_FILE + "':"
-					+ e.getClass().getTypeName() + ":" + e.getMessage());
+				printSaveError(e);
+			}
+		});
+	}
+
+	/** Waits for a save started by {@link #saveInBackground(World)} to finish **/
+	private static void waitForSave() {
+		if(pendingSave != null) {
+			try {
+				pendingSave.get();
+			} catch(InterruptedException | ExecutionException e) {
+				e.printStackTrace();
+			}
+			pendingSave = null;
+		}
+	}
+
+	private static void printSaveError(IOException e) {
+		System.out.println("Error while saving world to '" + SAVE_DIRECTORY + "':"
+			+ e.getClass().getTypeName() + ":" + e.getMessage());
+	}
+
+	private static void deleteWorld() throws IOException {
+		try(Stream<Path> files = Files.walk(SAVE_DIRECTORY)) {
+			for(Path file : (Iterable<Path>)files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
 			}
-		} else {
-			System.out.println("Server stopped without saving to file.");
 		}
+		System.out.println("Deleted world " + SAVE_DIRECTORY + ".");
 	}
 
 	private static CommandParser createParser() {
@@ -85,7 +210,8 @@ class StartServer {
 			.register("say", 		StartServer::sayCommand, false)
 			.register("debug",		StartServer::debugCommand, false)
 			.register("printworld", StartServer::printworldCommand, false)
-			.register("killitems", 	StartServer::killItemsCommand, false);
+			.register("killitems", 	StartServer::killItemsCommand, false)
+			.register("save", 		StartServer::saveCommand, false);
 	}
 
 	private static void killItemsCommand(String args) {
@@ -102,14 +228,13 @@ class StartServer {
 		System.out.println(server.getDebugInfo());
 	}
 
+	private static void saveCommand(String args) {
+		saveInBackground(server.world());
+	}
+
 	private static void resetCommand(String args) {
+		delete = true;
 		abortCommand(args);
-		try {
-			if(Files.deleteIfExists(SAVE_FILE))
-				System.out.println("Deleted world " + SAVE_FILE + ".");
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
 	}
 
 	private static void stopCommand(String args) {
@@ -4,7 +4,11 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.StringJoiner;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -12,9 +16,14 @@ import ritzow.sandbox.data.Bytes;
 import ritzow.sandbox.data.Transportable;
 import ritzow.sandbox.network.NetworkUtility;
 import ritzow.sandbox.server.SerializationProvider;
+import ritzow.sandbox.server.world.ChunkLoader;
+import ritzow.sandbox.server.world.ChunkManager;
 import ritzow.sandbox.server.world.entity.ServerPlayerEntity;
+import ritzow.sandbox.util.FixedTimestep;
 import ritzow.sandbox.util.Utility;
 import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.ChangeJournal;
+import ritzow.sandbox.world.Chunk;
 import ritzow.sandbox.world.World;
 import ritzow.sandbox.world.block.Block;
 import ritzow.sandbox.world.block.DirtBlock;
@@ -35,14 +44,26 @@ public class GameServer {
 	private static final long NETWORK_SEND_INTERVAL_NANOSECONDS = Utility.millisToNanos(200);
 	private static final long PLAYER_STATE_BROADCAST_INTERVAL = Utility.millisToNanos(500);
 	private static final float BLOCK_DROP_VELOCITY = Utility.convertPerSecondToPerNano(7f);
+	/** The most changed cells sent individually in one update, more changes are sent as a block grid instead **/
+	private static final int MAX_BLOCK_CHANGES = 4096;
 
 	private final Server<ClientState> server;
 	private World world;
+	/** Reads the changes to the world's blocks that haven't been sent to clients yet **/
+	private ChangeJournal.Cursor blockChanges;
 	private long lastWorldUpdateTime;
+	/** Runs world updates at a fixed rate, or null to update the world by the elapsed time **/
+	private FixedTimestep timestep;
+	/** Extends the world as players explore it, or null if the world has a fixed size **/
+	private ChunkManager chunkManager;
+	/** Loads and unloads chunks around players, or null to keep the whole world loaded and simulated **/
+	private ChunkLoader chunkLoader;
+	private final List<Entity> players;
 	private boolean shutdown;
 
 	public GameServer(InetSocketAddress bind) throws IOException {
 		this.server = new Server<>(bind);
+		this.players = new ArrayList<>();
 	}
 
 	private static void log(String message) {
@@ -64,7 +85,38 @@ public class GameServer {
 	public void setCurrentWorld(World world) {
 		world.setRemoveEntities(this::broadcastRemoveEntity);
 		this.world = world;
+		this.blockChanges = world.getBlocks().getJournal().subscribe();
 		this.lastWorldUpdateTime = System.nanoTime();
+		if(timestep != null) timestep.reset(lastWorldUpdateTime);
+		if(chunkManager != null) chunkManager.reset();
+	}
+
+	/**
+	 * Sets the chunk manager used to generate the world as players approach its right edge, replacing
+	 * and shutting down the previous chunk manager.
+	 * @param chunkManager the chunk manager, or null to stop extending the world
+	 */
+	public void setChunkManager(ChunkManager chunkManager) {
+		if(this.chunkManager != null) this.chunkManager.shutdown();
+		this.chunkManager = chunkManager;
+	}
+
+	/** @param chunkLoader the chunk loader, or null to keep every chunk loaded and every entity simulated **/
+	public void setChunkLoader(ChunkLoader chunkLoader) {
+		this.chunkLoader = chunkLoader;
+	}
+
+	/**
+	 * Sets the number of times per second the world is updated by a fixed amount of time.
+	 * @param ticksPerSecond the tick rate, or 0 to update the world by however much time
+	 * has passed since the last update.
+	 */
+	public void setTickRate(int ticksPerSecond) {
+		if(ticksPerSecond < 0)
+			throw new IllegalArgumentException("ticksPerSecond cannot be negative");
+		timestep = ticksPerSecond == 0 ? null : new FixedTimestep(ticksPerSecond, MAX_UPDATE_TIMESTEP);
+		lastWorldUpdateTime = System.nanoTime();
+		if(timestep != null) timestep.reset(lastWorldUpdateTime);
 	}
 
 	public InetSocketAddress getAddress() throws IOException {
@@ -148,13 +200,31 @@ public class GameServer {
 				server.sendQueued();
 			} else {
 				server.close();
+				if(chunkManager != null) chunkManager.shutdown();
 			}
 		} else {
-			lastWorldUpdateTime = Utility.updateWorld(
-				world,
-				lastWorldUpdateTime,
-				MAX_UPDATE_TIMESTEP
-			);
+			if(chunkLoader != null) {
+				for(ClientState client : server.clients()) {
+					if(client.player != null) players.add(client.player);
+				}
+				chunkLoader.update(world, players);
+				players.clear();
+			}
+
+			if(timestep == null) {
+				lastWorldUpdateTime = Utility.updateWorld(
+					world,
+					lastWorldUpdateTime,
+					MAX_UPDATE_TIMESTEP
+				);
+			} else {
+				timestep.update(world, System.nanoTime());
+			}
+
+			sendBlockChanges();
+			if(chunkManager != null) {
+				extendWorld();
+			}
 
 			if(Utility.nanosSince(lastClientsUpdate) > NETWORK_SEND_INTERVAL_NANOSECONDS) {
 				lastClientsUpdate = System.nanoTime();
@@ -164,6 +234,144 @@ public class GameServer {
 		}
 	}
 
+	/** Generates chunks near the rightmost player and sends any chunks added to the world to the clients **/
+	private void extendWorld() {
+		float playerX = Float.NEGATIVE_INFINITY;
+		for(ClientState client : server.clients()) {
+			if(client.player != null && client.inGame()) {
+				playerX = Math.max(playerX, client.player.getPositionX());
+			}
+		}
+		int width = world.getBlocks().getWidth();
+		if(playerX > Float.NEGATIVE_INFINITY && chunkManager.update(world, playerX)) {
+			//the new blocks are sent as part of the extension
+			blockChanges.skip();
+			BlockGrid blocks = world.getBlocks();
+			broadcastWorldPackets(buildWorldExtensionPackets(blocks, width, 0, blocks.getWidth() - width, blocks.getHeight()));
+		}
+	}
+
+	/**
+	 * Sends the cells changed since the last call to the clients, or the chunks containing them if there are too many
+	 * changes. If the journal lost some of the changes, every loaded chunk is sent instead.
+	 */
+	private void sendBlockChanges() {
+		if(!blockChanges.hasChanges()) return;
+		BlockGrid blocks = world.getBlocks();
+		Map<Block, byte[]> serialized = new IdentityHashMap<>();
+		List<byte[]> cells = new ArrayList<>();
+		int chunksHigh = blocks.getChunksHigh();
+		long[] changedChunks = new long[(blocks.getChunksWide() * chunksHigh + 63) >>> 6];
+		boolean complete = blockChanges.drain((x, y, width, height) -> {
+			for(int chunkX = x >> Chunk.SHIFT; chunkX <= (x + width - 1) >> Chunk.SHIFT; chunkX++) {
+				for(int chunkY = y >> Chunk.SHIFT; chunkY <= (y + height - 1) >> Chunk.SHIFT; chunkY++) {
+					int index = chunkX * chunksHigh + chunkY;
+					changedChunks[index >>> 6] |= 1L << index;
+				}
+			}
+			for(int row = y; row < y + height && cells.size() <= MAX_BLOCK_CHANGES; row++) {
+				for(int column = x; column < x + width && cells.size() <= MAX_BLOCK_CHANGES; column++) {
+					cells.add(buildBlockChange(blocks, column, row, serialized));
+				}
+			}
+		});
+
+		if(complete && cells.size() <= MAX_BLOCK_CHANGES) {
+			broadcastWorldPackets(buildBlockChangePackets(cells));
+		} else {
+			for(int chunkX = 0; chunkX < blocks.getChunksWide(); chunkX++) {
+				for(int chunkY = 0; chunkY < chunksHigh; chunkY++) {
+					int index = chunkX * chunksHigh + chunkY;
+					//unloaded chunks were saved unchanged, so a full resend doesn't read them back from disk
+					if(complete ? (changedChunks[index >>> 6] & 1L << index) != 0 : blocks.isLoaded(chunkX, chunkY)) {
+						int x = chunkX << Chunk.SHIFT, y = chunkY << Chunk.SHIFT;
+						broadcastWorldPackets(buildWorldExtensionPackets(blocks, x, y,
+							Math.min(Chunk.SIZE, blocks.getWidth() - x), Math.min(Chunk.SIZE, blocks.getHeight() - y)));
+					}
+				}
+			}
+		}
+	}
+
+	/** @return the x and y coordinates of a cell followed by its block in every layer **/
+	private static byte[] buildBlockChange(BlockGrid blocks, int x, int y, Map<Block, byte[]> serialized) {
+		byte[][] layers = new byte[blocks.getLayers()][];
+		int length = 8;
+		for(int layer = 0; layer < layers.length; layer++) {
+			Block block = blocks.get(layer, x, y);
+			layers[layer] = serialized.computeIfAbsent(block, b -> serialize(b, false));
+			length += layers[layer].length;
+		}
+		byte[] cell = new byte[length];
+		Bytes.putInteger(cell, 0, x);
+		Bytes.putInteger(cell, 4, y);
+		int index = 8;
+		for(byte[] data : layers) {
+			Bytes.copy(data, cell, index);
+			index += data.length;
+		}
+		return cell;
+	}
+
+	/** Groups changed cells into as few block change messages as possible **/
+	private static byte[][] buildBlockChangePackets(List<byte[]> cells) {
+		List<byte[]> packets = new ArrayList<>();
+		int start = 0;
+		while(start < cells.size()) {
+			int end = start, length = 4;
+			while(end < cells.size() && length + cells.get(end).length <= MAX_MESSAGE_LENGTH) {
+				length += cells.get(end++).length;
+			}
+			byte[] packet = new byte[length];
+			Bytes.putShort(packet, 0, TYPE_SERVER_BLOCK_CHANGES);
+			Bytes.putShort(packet, 2, (short)(end - start));
+			int index = 4;
+			for(int i = start; i < end; i++) {
+				Bytes.copy(cells.get(i), packet, index);
+				index += cells.get(i).length;
+			}
+			packets.add(packet);
+			start = end;
+		}
+		return packets.toArray(byte[][]::new);
+	}
+
+	/** Sends packets that change the world to clients in game, and records them for clients still loading it **/
+	private void broadcastWorldPackets(byte[][] packets) {
+		for(ClientState client : server.clients()) {
+			switch(client.status) {
+				case STATUS_CONNECTED -> {
+					for(byte[] packet : packets) {
+						client.recordedSend.add(packet);
+					}
+				}
+				case STATUS_IN_GAME -> {
+					for(byte[] packet : packets) {
+						client.send(packet, true);
+					}
+				}
+			}
+		}
+	}
+
+	/** Serializes a region of the blocks into an extension message followed by world data messages **/
+	private static byte[][] buildWorldExtensionPackets(BlockGrid blocks, int x, int y, int width, int height) {
+		BlockGrid region = new BlockGrid(blocks.getLayers(), width, height);
+		region.copy(blocks, x, y, 0, 0, width, height);
+		byte[] regionBytes = serializeWorldData(region);
+		byte[][] packets = Bytes.split(regionBytes, MAX_MESSAGE_LENGTH - 2, 2, 1);
+		byte[] head = new byte[2 + 4 + 4 + 4];
+		Bytes.putShort(head, 0, TYPE_SERVER_WORLD_EXTEND);
+		Bytes.putInteger(head, 2, x);
+		Bytes.putInteger(head, 6, y);
+		Bytes.putInteger(head, 10, regionBytes.length);
+		packets[0] = head;
+		for(int i = 1; i < packets.length; i++) {
+			Bytes.putShort(packets[i], 0, TYPE_SERVER_WORLD_DATA);
+		}
+		return packets;
+	}
+
 	//TODO deal with limbo states such as when client responds, but isn't actually doing anything
 	private void handleClientStatus() { //TODO this is not allowing disconnect messages to be sent!
 		var iterator = server.clients().iterator();
@@ -229,17 +437,21 @@ public class GameServer {
 	}
 
 	private void sendEntityUpdates() {
-		int entitiesRemaining = world.entities();
+		//sleeping entities only fall asleep after staying still for longer than the update interval,
+		//so clients already have their current state
+		int entitiesRemaining = world.entities() - world.sleepingEntities();
 		Iterator<Entity> iterator = world.iterator();
-		while(iterator.hasNext()) {
+		while(entitiesRemaining > 0) {
 			int count = Math.min(entitiesRemaining, MAX_ENTITIES_PER_PACKET);
 			byte[] packet = new byte[ENTITY_UPDATE_HEADER_SIZE + count * BYTES_PER_ENTITY];
 			Bytes.putShort(packet, 0, TYPE_SERVER_ENTITY_UPDATE);
 			Bytes.putInteger(packet, 2, count);
-			for(int index = 0; index < count; index++) {
+			for(int index = 0; index < count;) {
 				Entity entity = iterator.next();
-				populateEntityUpdate(packet, ENTITY_UPDATE_HEADER_SIZE + index * BYTES_PER_ENTITY, entity);
-				entitiesRemaining--;
+				if(!world.isSleeping(entity)) {
+					populateEntityUpdate(packet, ENTITY_UPDATE_HEADER_SIZE + index++ * BYTES_PER_ENTITY, entity);
+					entitiesRemaining--;
+				}
 			}
 			broadcastUnsafe(packet, false, ClientState::inGame);
 		}
@@ -302,10 +514,11 @@ public class GameServer {
 	}
 
 	public String getDebugInfo() {
+		String chunks = chunkLoader == null ? "" : chunkLoader + "\n";
 		if(server.clients().isEmpty()) {
-			return "No connected clients.";
+			return chunks + "No connected clients.";
 		} else {
-			StringJoiner joiner = new StringJoiner("\n");
+			StringJoiner joiner = new StringJoiner("\n", chunks, "");
 			for(ClientState client : server.clients()) {
 				joiner.add(client.toString());
 			}
@@ -326,7 +539,6 @@ public class GameServer {
 				sendUseCooldownSuccess(client, now);
 				Block block = world.getBlocks().set(layer, x, y, null);
 				block.onBreak(world, x, y);
-				broadcastRemoveBlock(x, y);
 				if(block != null) {
 					var drop = new ItemEntity<Item>(world.nextEntityID(), new BlockItem(block), x, y);
 					float angle = Utility.random(0, Math.PI);
@@ -362,7 +574,6 @@ public class GameServer {
 				};
 				sendUseCooldownSuccess(client, now);
 				world.getBlocks().place(world, layer, x, y, blockType);
-				broadcastPlaceBlock(blockType, x, y);
 			} else {
 				sendUseCooldownFailure(client);
 			}
@@ -387,34 +598,6 @@ public class GameServer {
 		client.send(packet, true);
 	}
 
-	public void broadcastRemoveBlock(int x, int y) {
-		byte[] packet = new byte[10];
-		Bytes.putShort(packet, 0, TYPE_SERVER_REMOVE_BLOCK);
-		Bytes.putInteger(packet, 2, x);
-		Bytes.putInteger(packet, 6, y);
-		for(ClientState client : server.clients()) {
-			switch(client.status) {
-				case STATUS_CONNECTED -> client.recordedSend.add(packet);
-				case STATUS_IN_GAME -> client.send(packet, true);
-			}
-		}
-	}
-
-	private void broadcastPlaceBlock(Block block, int x, int y) {
-		byte[] blockData = serialize(block, false);
-		byte[] packet = new byte[10 + blockData.length];
-		Bytes.putShort(packet, 0, TYPE_SERVER_PLACE_BLOCK);
-		Bytes.putInteger(packet, 2, x);
-		Bytes.putInteger(packet, 6, y);
-		Bytes.copy(blockData, packet, 10);
-		for(ClientState client : server.clients()) {
-			switch(client.status) {
-				case STATUS_CONNECTED -> client.recordedSend.add(packet);
-				case STATUS_IN_GAME -> client.send(packet, true);
-			}
-		}
-	}
-
 	private void processClientConnectRequest(ClientState client) {
 		if(world != null) {
 			ServerPlayerEntity player = new ServerPlayerEntity(world.nextEntityID());
@@ -453,7 +636,7 @@ public class GameServer {
 	}
 
 	private static byte[][] buildAcknowledgementPackets(World world, int playerID) {
-		byte[] worldBytes = serialize(world, COMPRESS_WORLD_DATA);
+		byte[] worldBytes = serializeWorldData(world);
 		byte[][] packets = Bytes.split(worldBytes, MAX_MESSAGE_LENGTH - 2, 2, 1);
 		packets[0] = buildConnectAcknowledgement(worldBytes.length, playerID);
 		for(int i = 1; i < packets.length; i++) {
@@ -476,6 +659,11 @@ public class GameServer {
 		return compress ? Bytes.compress(serialized) : serialized;
 	}
 
+	/** Compact data is smaller, but compresses worse than fixed size data, so it is only used without compression **/
+	private static byte[] serializeWorldData(Transportable object) {
+		return COMPRESS_WORLD_DATA ? serialize(object, true) : SerializationProvider.getProvider().serializeCompact(object);
+	}
+
 	public void broadcastAddEntity(Entity e) {
 		byte[] message = buildAddEntity(e);
 		for(ClientState client : server.clients()) {
@@ -487,7 +675,7 @@ public class GameServer {
 	}
 
 	private static byte[] buildAddEntity(Entity e) {
-		byte[] entity = SerializationProvider.getProvider().serialize(e);
+		byte[] entity = SerializationProvider.getProvider().serializeCompact(e);
 		boolean compress = entity.length > MAX_MESSAGE_LENGTH - 3;
 		entity = compress ? Bytes.compress(entity) : entity;
 		byte[] packet = new byte[3 + entity.length];
@@ -0,0 +1,166 @@
+package ritzow.sandbox.server.world;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import ritzow.sandbox.util.Utility;
+import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.Chunk;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.entity.Entity;
+import ritzow.sandbox.world.storage.WorldStorage;
+
+/**
+ * Keeps the chunks near players loaded and stops simulating the rest of the world. Every {@link #UPDATE_INTERVAL},
+ * the chunks within the load radius of each player are loaded along with a margin of one chunk and marked in use,
+ * and entities in chunks outside the radius are {@link World#setFrozen(Entity, boolean) frozen}. Chunks in the margin
+ * are loaded so that entities at the edge of the radius don't have to wait for chunks to be read from disk, so they
+ * are never unloaded while they are in use. Chunks outside the
+ * radius stay loaded as a cache until the loaded chunks use more memory than the budget, at which point the least
+ * recently used chunks are unloaded until they fit. Only chunks that have been saved to the {@link WorldStorage} are
+ * unloaded, and unloaded chunks are read back from the storage the next time they are accessed.
+ * @author Solomon Ritzow
+ */
+public final class ChunkLoader {
+	private static final long UPDATE_INTERVAL = Utility.millisToNanos(250);
+
+	private final WorldStorage storage;
+	private final int radius;
+	private final long memoryBudget;
+	private World world;
+	/**
+	 * The update in which each chunk was last within the radius or margin of a player, and whether it is within the
+	 * radius, by chunk index
+	 */
+	private long[] lastUsed;
+	private boolean[] inRange;
+	private long updates, lastUpdateTime;
+	private int unloaded;
+
+	/**
+	 * @param storage the storage chunks are saved to and loaded from
+	 * @param radius the distance in chunks from a player's chunk to the chunks that are simulated
+	 * @param memoryBudget the number of bytes of loaded chunks to keep before unloading unused chunks
+	 */
+	public ChunkLoader(WorldStorage storage, int radius, long memoryBudget) {
+		if(radius < 0)
+			throw new IllegalArgumentException("radius can't be negative");
+		if(memoryBudget < 0)
+			throw new IllegalArgumentException("memory budget can't be negative");
+		this.storage = storage;
+		this.radius = radius;
+		this.memoryBudget = memoryBudget;
+		this.lastUsed = new long[0];
+		this.inRange = new boolean[0];
+	}
+
+	/**
+	 * Loads the chunks near players, freezes and unfreezes entities, and unloads chunks if the budget is exceeded,
+	 * at most once every {@link #UPDATE_INTERVAL}. Call before each world update.
+	 * @param players the entities that keep the chunks around them loaded
+	 */
+	public void update(World world, Iterable<? extends Entity> players) {
+		if(world == this.world && System.nanoTime() - lastUpdateTime < UPDATE_INTERVAL) return;
+		lastUpdateTime = System.nanoTime();
+		if(world != this.world) {
+			this.world = world;
+			world.getBlocks().setChunkSource(this::load);
+			lastUsed = new long[0];
+		}
+		BlockGrid blocks = world.getBlocks();
+		int chunksHigh = blocks.getChunksHigh(), count = blocks.getChunksWide() * chunksHigh;
+		if(lastUsed.length < count) {
+			lastUsed = Arrays.copyOf(lastUsed, count);
+			inRange = new boolean[count];
+		} else {
+			Arrays.fill(inRange, false);
+		}
+		updates++;
+		for(Entity player : players) {
+			int chunkX = chunkX(blocks, player.getPositionX()), chunkY = chunkY(blocks, player.getPositionY());
+			for(int x = Math.max(0, chunkX - radius - 1), right = Math.min(blocks.getChunksWide() - 1, chunkX + radius + 1); x <= right; x++) {
+				for(int y = Math.max(0, chunkY - radius - 1), top = Math.min(chunksHigh - 1, chunkY + radius + 1); y <= top; y++) {
+					blocks.getChunk(x, y); //loads the chunk if it was unloaded
+					lastUsed[chunksHigh * x + y] = updates;
+					if(Math.abs(x - chunkX) <= radius && Math.abs(y - chunkY) <= radius) {
+						inRange[chunksHigh * x + y] = true;
+					}
+				}
+			}
+		}
+
+		for(Entity e : world) {
+			boolean freeze = !inRange[chunksHigh * chunkX(blocks, e.getPositionX()) + chunkY(blocks, e.getPositionY())];
+			if(freeze != world.isFrozen(e)) {
+				world.setFrozen(e, freeze);
+			}
+		}
+
+		if(storage.isSaved(world)) {
+			unloadUnused(blocks, count);
+		}
+	}
+
+	/** Unloads the least recently used chunks that have been saved until the loaded chunks fit in the budget **/
+	private void unloadUnused(BlockGrid blocks, int count) {
+		int chunksHigh = blocks.getChunksHigh();
+		long used = 0;
+		//candidates are sorted by the update they were last used in, followed by their index
+		long[] candidates = new long[count];
+		int candidateCount = 0;
+		for(int index = 0; index < count; index++) {
+			int chunkX = index / chunksHigh, chunkY = index % chunksHigh;
+			if(blocks.isLoaded(chunkX, chunkY)) {
+				Chunk chunk = blocks.getChunk(chunkX, chunkY);
+				if(chunk != null) {
+					used += chunk.getMemoryUsage();
+					//chunks used in this update, including the margin, are never unloaded
+					if(lastUsed[index] != updates && !blocks.isDirty(chunkX, chunkY)) {
+						candidates[candidateCount++] = lastUsed[index] << 32 | index;
+					}
+				}
+			}
+		}
+		if(used > memoryBudget) {
+			Arrays.sort(candidates, 0, candidateCount);
+			for(int i = 0; i < candidateCount && used > memoryBudget; i++) {
+				int index = (int)candidates[i];
+				int chunkX = index / chunksHigh, chunkY = index % chunksHigh;
+				used -= blocks.getChunk(chunkX, chunkY).getMemoryUsage();
+				blocks.unload(chunkX, chunkY);
+				unloaded++;
+			}
+		}
+	}
+
+	private static int chunkX(BlockGrid blocks, float x) {
+		return Utility.clamp(0, Math.round(x) >> Chunk.SHIFT, blocks.getChunksWide() - 1);
+	}
+
+	private static int chunkY(BlockGrid blocks, float y) {
+		return Utility.clamp(0, Math.round(y) >> Chunk.SHIFT, blocks.getChunksHigh() - 1);
+	}
+
+	private Chunk load(int chunkX, int chunkY) {
+		try {
+			return storage.loadChunk(chunkX, chunkY);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		if(world == null) return "ChunkLoader[no world]";
+		BlockGrid blocks = world.getBlocks();
+		int loaded = 0;
+		long memory = 0;
+		for(Chunk chunk : blocks) {
+			loaded++;
+			memory += chunk.getMemoryUsage();
+		}
+		return "ChunkLoader[" + loaded + " chunks loaded using " + Utility.formatSize(memory) + " of "
+			+ Utility.formatSize(memoryBudget) + ", " + unloaded + " unloaded so far, "
+			+ world.frozenEntities() + " of " + world.entities() + " entities frozen]";
+	}
+}
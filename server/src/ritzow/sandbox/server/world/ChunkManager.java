@@ -0,0 +1,154 @@
+package ritzow.sandbox.server.world;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.Chunk;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.block.Block;
+import ritzow.sandbox.world.generator.ChunkGenerator;
+
+/**
+ * Generates a world's chunks as players approach the right edge of the world, so that only the part of the world
+ * that has been explored is ever generated. Columns of chunks are generated on a pool of background threads and
+ * added to the world in order by {@link #update(World, float)}, so the world is only extended by complete columns
+ * and generation never blocks a world update. The left edge of the world stays at zero so that block coordinates
+ * never change.
+ * @author Solomon Ritzow
+ */
+public final class ChunkManager {
+	private final ChunkGenerator generator;
+	private final long seed;
+	private final int distance;
+	private final ForkJoinPool workers;
+	/** Columns being generated, in order, the first at {@link #nextColumn} minus the number of pending columns **/
+	private final Queue<CompletableFuture<Chunk[]>> pending;
+	/** The position in chunks of the next column to start generating **/
+	private int nextColumn;
+
+	/**
+	 * @param generator the generator of the blocks in every chunk
+	 * @param seed the seed passed to the generator
+	 * @param threads the number of threads used to generate chunks
+	 * @param distance the number of columns of chunks kept generated to the right of the rightmost player
+	 */
+	public ChunkManager(ChunkGenerator generator, long seed, int threads, int distance) {
+		if(threads <= 0)
+			throw new IllegalArgumentException("threads must be positive");
+		if(distance < 0)
+			throw new IllegalArgumentException("distance can't be negative");
+		this.generator = generator;
+		this.seed = seed;
+		this.distance = distance;
+		this.workers = new ForkJoinPool(threads);
+		this.pending = new ArrayDeque<>();
+		this.nextColumn = -1;
+	}
+
+	public ChunkGenerator getGenerator() {
+		return generator;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Generates a new world using every worker thread, and waits for it to finish.
+	 * @param chunksWide the width of the world in chunks
+	 */
+	public World generate(int chunksWide) {
+		World world = new World(chunksWide * Chunk.SIZE, generator.getHeight());
+		BlockGrid blocks = world.getBlocks();
+		reset();
+		nextColumn = 0;
+		request(blocks, chunksWide);
+		while(!pending.isEmpty()) {
+			for(Chunk chunk : pending.poll().join()) {
+				if(!chunk.isEmpty()) blocks.setChunk(chunk);
+			}
+		}
+		return world;
+	}
+
+	/**
+	 * Starts generating any columns within the generation distance of {@code playerX} that haven't been requested
+	 * yet, and adds finished columns to the world.
+	 * @param world the world, which must be the same world every time until it is replaced
+	 * @param playerX the horizontal position of the rightmost player
+	 * @return true if the world was extended.
+	 */
+	public boolean update(World world, float playerX) {
+		BlockGrid blocks = world.getBlocks();
+		if(nextColumn < 0) {
+			//worlds that weren't generated here can have a partial chunk column on the right
+			nextColumn = blocks.getWidth() >> Chunk.SHIFT;
+		}
+		request(blocks, Math.max(0, (int)playerX >> Chunk.SHIFT) + distance + 1);
+		boolean extended = false;
+		while(!pending.isEmpty() && pending.peek().isDone()) {
+			add(blocks, pending.poll().join());
+			extended = true;
+		}
+		return extended;
+	}
+
+	/** Forgets the world currently being extended, call before using the manager for another world **/
+	public void reset() {
+		for(CompletableFuture<Chunk[]> column : pending) {
+			column.cancel(false);
+		}
+		pending.clear();
+		nextColumn = -1;
+	}
+
+	/** Stops the worker threads, generation in progress is discarded **/
+	public void shutdown() {
+		reset();
+		workers.shutdownNow();
+	}
+
+	/** Starts generating every column to the left of {@code chunksWide} that hasn't been requested **/
+	private void request(BlockGrid blocks, int chunksWide) {
+		int layers = blocks.getLayers(), chunksHigh = blocks.getChunksHigh();
+		for(; nextColumn < chunksWide; nextColumn++) {
+			int chunkX = nextColumn;
+			pending.add(CompletableFuture.supplyAsync(() -> generateColumn(chunkX, chunksHigh, layers), workers));
+		}
+	}
+
+	private Chunk[] generateColumn(int chunkX, int chunksHigh, int layers) {
+		Chunk[] column = new Chunk[chunksHigh];
+		for(int chunkY = 0; chunkY < chunksHigh; chunkY++) {
+			generator.generate(column[chunkY] = new Chunk(chunkX, chunkY, layers), seed);
+		}
+		return column;
+	}
+
+	/** Extends the grid to the right edge of a column and adds the column's blocks that are outside the grid **/
+	private static void add(BlockGrid blocks, Chunk[] column) {
+		int left = column[0].getChunkX() << Chunk.SHIFT, right = left + Chunk.SIZE;
+		int start = blocks.getWidth();
+		blocks.extend(right);
+		if(start == left) {
+			for(Chunk chunk : column) {
+				if(!chunk.isEmpty()) blocks.setChunk(chunk);
+			}
+		} else {
+			//the column contains the old right edge of the grid, only add the cells past it
+			for(Chunk chunk : column) {
+				int bottom = chunk.getChunkY() << Chunk.SHIFT;
+				for(int y = bottom, top = Math.min(bottom + Chunk.SIZE, blocks.getHeight()); y < top; y++) {
+					for(int x = start; x < right; x++) {
+						for(int layer = 0; layer < blocks.getLayers(); layer++) {
+							Block block = chunk.get(layer, x - left, y - bottom);
+							if(block != null) blocks.set(layer, x, y, block);
+						}
+					}
+				}
+			}
+		}
+	}
+}
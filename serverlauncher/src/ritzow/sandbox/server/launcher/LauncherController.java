@@ -186,10 +186,8 @@ class LauncherController {
 			}
 			startButton.setDisable(true);
 			GameServer server = new GameServer(new InetSocketAddress(ip, port));
-			server.setCurrentWorld(SerializationProvider
-				.getProvider()
-				.deserialize(Utility.loadCompressedFile(Path.of(worldFileField.getText().isEmpty() ?
-					worldFileField.getPromptText() : worldFileField.getText()))));
+			server.setCurrentWorld(Utility.loadCompressedObject(Path.of(worldFileField.getText().isEmpty() ?
+					worldFileField.getPromptText() : worldFileField.getText()), SerializationProvider.getProvider()));
 			stage.setOnCloseRequest(windowEvent -> {
 				System.out.println("Shutting down server");
 				server.shutdown(); //TODO this needs to happen in server update thread.
@@ -12,6 +12,7 @@ module ritzow.sandbox.shared {
 	exports ritzow.sandbox.world.entity;
 	exports ritzow.sandbox.world.block;
 	exports ritzow.sandbox.world.generator;
+	exports ritzow.sandbox.world.storage;
 	exports ritzow.sandbox.data;
 
 	requires hola;
@@ -1,6 +1,9 @@
 package ritzow.sandbox.data;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Collection;
@@ -15,6 +18,12 @@ import java.util.zip.Inflater;
 public final class Bytes {
 	public static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
 
+	/** Big endian views of byte arrays, which read and write a whole value at once instead of a byte at a time **/
+	private static final VarHandle
+		SHORTS = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN),
+		INTEGERS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN),
+		LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
 	/**
 	 * Splits source into arrays of at most {@code length} bytes.
 	 * @param source the source array.
@@ -141,22 +150,15 @@ public final class Bytes {
 	}
 
 	public static int getInteger(byte[] array, int index) {
-		return ((array[index] & 255) << 24) |
-				((array[index + 1] & 255) << 16) |
-				((array[index + 2] & 255) << 8) |
-				((array[index + 3] & 255));
+		return (int)INTEGERS.get(array, index);
 	}
 
 	public static long getLong(byte[] array, int index) {
-		long value = 0;
-		for (int i = 0; i < 8; i++) {
-			value = (value << 8) + (array[index + i] & 0xff);
-		}
-		return value;
+		return (long)LONGS.get(array, index);
 	}
 
 	public static short getShort(byte[] array, int index) {
-		return (short)((array[index] << 8) | (array[index + 1] & 255));
+		return (short)SHORTS.get(array, index);
 	}
 
 	public static boolean getBoolean(byte[] array, int index) {
@@ -182,22 +184,15 @@ public final class Bytes {
 	}
 
 	public static void putInteger(byte[] array, int index, int value) {
-		array[index + 0] = (byte)(value >>> 24);
-		array[index + 1] = (byte)(value >>> 16);
-		array[index + 2] = (byte)(value >>> 8);
-		array[index + 3] = (byte)(value >>> 0);
+		INTEGERS.set(array, index, value);
 	}
 
 	public static void putLong(byte[] array, int index, long value) {
-	    for (int i = 7; i >= 0; i--) {
-	        array[index + i] = (byte)(value & 255);
-	        value >>= 8;
-	    }
+		LONGS.set(array, index, value);
 	}
 
 	public static void putShort(byte[] array, int index, short value) {
-		array[index + 0] = (byte)((value >>> 8) & 0xFF);
-		array[index + 1] = (byte)((value >>> 0) & 0xFF);
+		SHORTS.set(array, index, value);
 	}
 
 	public static void putBoolean(byte[] array, int index, boolean b) {
@@ -13,4 +13,10 @@ public interface DataReader {
 	byte readByte();
 	byte[] readBytes(int count);
 	void readBytes(byte[] dest, int offset);
+	/** Reads {@code length} values into {@code dest} starting at {@code offset}, all at once if possible **/
+	void readLongs(long[] dest, int offset, int length);
+	/** Reads {@code length} values into {@code dest} starting at {@code offset}, all at once if possible **/
+	void readInts(int[] dest, int offset, int length);
+	/** Reads {@code length} values into {@code dest} starting at {@code offset}, all at once if possible **/
+	void readFloats(float[] dest, int offset, int length);
 }
@@ -0,0 +1,13 @@
+package ritzow.sandbox.data;
+
+public interface DataWriter {
+	void writeDouble(double value);
+	void writeFloat(float value);
+	void writeLong(long value);
+	void writeInteger(int value);
+	void writeShort(short value);
+	void writeBoolean(boolean value);
+	void writeByte(byte value);
+	void writeBytes(byte[] data);
+	void writeBytes(byte[] data, int offset, int length);
+}
@@ -1,20 +1,68 @@
 package ritzow.sandbox.data;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Serializes and deserializes registered types of {@link Transportable} objects. Deserializers are looked up in an
+ * array indexed by type ID, and the type IDs of classes are cached by a {@link ClassValue}, so reading or writing an
+ * object doesn't hash or box anything. Once every type has been registered, {@link #freeze()} prevents any more
+ * from being registered, so the registry can't change while objects are read and written on other threads.
+ * Objects serialized by {@link #serializeCompact(Transportable)} are preceded by {@link #COMPACT_TYPE} and the version
+ * of the compact encoding, so readers can tell compact objects apart from objects serialized before it existed.
+ * @author Solomon Ritzow
+ */
 public class SerializerReaderWriter implements Serializer, Deserializer {
-	private final Map<Short, ObjectBuilder> deserializeLookup;
+	/** Deserializers indexed by the unsigned value of their type ID, only as long as the largest registered ID **/
+	private ObjectBuilder[] deserializeLookup;
 	private final Map<Class<? extends Transportable>, Short> serializeLookup;
+	/** The type ID of each class, or null if the class isn't registered **/
+	private final ClassValue<Short> typeIDs;
+	private volatile boolean frozen;
+	/** A writer for each thread, reused by every object serialized on the thread that isn't nested in another **/
+	private final ThreadLocal<BufferWriter> writers;
 
 	public static final short NULL_TYPE = 0;
 
+	/** Precedes an object serialized with the compact encoding, which can't be registered as a type **/
+	public static final short COMPACT_TYPE = -1;
+	private static final byte COMPACT_VERSION = 1;
+
+	/** The sizes of the buffers of compressed and decompressed data used by compressed readers **/
+	private static final int COMPRESSED_BUFFER_SIZE = 16 * 1024, INFLATED_BUFFER_SIZE = 64 * 1024;
+
+	/** The initial size of the buffer of a writer, and the largest buffer kept for the next object serialized **/
+	private static final int WRITE_BUFFER_SIZE = 4 * 1024, MAX_REUSED_WRITE_BUFFER_SIZE = 1024 * 1024;
+
+	/** The most sections that can be written by {@link TransportableDataWriter#writeSections} **/
+	private static final int MAX_SECTIONS = 1 << 20;
+
 	public SerializerReaderWriter() {
-		this.deserializeLookup = new HashMap<Short, ObjectBuilder>();
+		this.deserializeLookup = new ObjectBuilder[0];
 		this.serializeLookup = new HashMap<Class<? extends Transportable>, Short>();
+		this.typeIDs = new ClassValue<>() {
+			@Override
+			protected Short computeValue(Class<?> type) {
+				synchronized(SerializerReaderWriter.this) {
+					return serializeLookup.get(type);
+				}
+			}
+		};
+		this.writers = ThreadLocal.withInitial(BufferWriter::new);
 	}
 
 	public <T extends Transportable> SerializerReaderWriter
@@ -24,43 +72,309 @@ public class SerializerReaderWriter implements Serializer, Deserializer {
 		return this;
 	}
 
-	public <T extends Transportable> SerializerReaderWriter registerWrite(short identifier, Class<T> returnType) {
-		if(identifier == 0)
-			throw new IllegalArgumentException("0 is a reserved identifier");
+	public synchronized <T extends Transportable> SerializerReaderWriter registerWrite(short identifier, Class<T> returnType) {
+		checkRegister(identifier);
 		if(serializeLookup.putIfAbsent(Objects.requireNonNull(returnType), identifier) != null) {
 			throw new IllegalArgumentException(returnType + " already has an identifier");
 		}
+		//in case the class was looked up before it was registered
+		typeIDs.remove(returnType);
 		return this;
 	}
 
-	public SerializerReaderWriter registerRead(short identifier, ObjectBuilder deserializer) {
-		if (deserializeLookup.putIfAbsent(identifier, Objects.requireNonNull(deserializer)) != null) {
+	public synchronized SerializerReaderWriter registerRead(short identifier, ObjectBuilder deserializer) {
+		checkRegister(identifier);
+		int index = Short.toUnsignedInt(identifier);
+		ObjectBuilder[] lookup = deserializeLookup;
+		if(index < lookup.length && lookup[index] != null) {
 			throw new IllegalArgumentException(identifier + " already has a deserializer");
 		}
+		lookup = Arrays.copyOf(lookup, Math.max(lookup.length, index + 1));
+		lookup[index] = Objects.requireNonNull(deserializer);
+		deserializeLookup = lookup;
 		return this;
 	}
 
+	private void checkRegister(short identifier) {
+		if(frozen)
+			throw new IllegalStateException("types can't be registered after the serializer is frozen");
+		if(identifier == NULL_TYPE || identifier == COMPACT_TYPE)
+			throw new IllegalArgumentException(identifier + " is a reserved identifier");
+	}
+
+	/**
+	 * Prevents any more types from being registered, which should be done once every type has been registered and
+	 * before the serializer is used by more than one thread.
+	 * @return this serializer
+	 */
+	public synchronized SerializerReaderWriter freeze() {
+		frozen = true;
+		return this;
+	}
+
+	/** @return true if {@link #freeze()} has been called **/
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/** @return the deserializer of a type, or null if the type isn't registered **/
+	private ObjectBuilder deserializer(short type) {
+		ObjectBuilder[] lookup = deserializeLookup;
+		int index = Short.toUnsignedInt(type);
+		return index < lookup.length ? lookup[index] : null;
+	}
+
 	@Override
 	public byte[] serialize(Transportable object) {
-		//null objects have 0 length
-		if(object == null)
-			return Bytes.of(NULL_TYPE); //just a type ID of 0 to represent null
+		BufferWriter writer = writer();
+		try {
+			writer.writeObject(object);
+			return writer.toByteArray();
+		} finally {
+			release(writer);
+		}
+	}
+
+	/**
+	 * Serializes an object without the type and length written by {@link #serialize(Transportable)}, so it can only be
+	 * read by the object's constructor.
+	 * @param object a non-null Transportable
+	 */
+	public byte[] serializeContents(Transportable object) {
+		BufferWriter writer = writer();
+		try {
+			object.write(writer);
+			return writer.toByteArray();
+		} finally {
+			release(writer);
+		}
+	}
+
+	/**
+	 * Serializes an object with variable length integers in place of every integer, type ID, and object length, and
+	 * with floating point numbers written as variable length integers of their reversed bits, so small integers and
+	 * numbers with short fractions such as 0 or 1.5 take one or two bytes. The object can be read by any method that
+	 * reads objects, and is usually much smaller before compression, but larger for data such as chunks that is
+	 * mostly large or random numbers.
+	 * @param object a Transportable or null
+	 */
+	public byte[] serializeCompact(Transportable object) {
+		BufferWriter writer = writer();
+		try {
+			writer.writeShort(COMPACT_TYPE);
+			writer.writeByte(COMPACT_VERSION);
+			writer.compact = true;
+			writer.writeObject(object);
+			return writer.toByteArray();
+		} finally {
+			release(writer);
+		}
+	}
+
+	/** @return the writer of the current thread, or a new writer if it is being used by a serialize call in progress **/
+	private BufferWriter writer() {
+		BufferWriter writer = writers.get();
+		if(writer.inUse) return new BufferWriter();
+		writer.inUse = true;
+		return writer;
+	}
+
+	private void release(BufferWriter writer) {
+		writer.length = 0;
+		writer.inUse = false;
+		writer.compact = false;
+		//don't keep a large buffer around for every thread that has serialized a world
+		if(writer.data.length > MAX_REUSED_WRITE_BUFFER_SIZE)
+			writer.data = new byte[WRITE_BUFFER_SIZE];
+	}
+
+	/**
+	 * Writes objects and primitives to a growable array. The length of each object is written before its data, so
+	 * space for it is reserved and it is filled in once the object has been written.
+	 */
+	private final class BufferWriter implements TransportableDataWriter {
+		byte[] data = new byte[WRITE_BUFFER_SIZE];
+		int length;
+		boolean inUse;
+		/** True if numbers, type IDs, and lengths are written as variable length integers **/
+		boolean compact;
+
+		/** Grows the buffer so that at least {@code count} more bytes can be written **/
+		private void require(int count) {
+			if(data.length - length < count) {
+				int required = Math.addExact(length, count);
+				data = Arrays.copyOf(data, Math.max(required, (int)Math.min(data.length * 2L, Integer.MAX_VALUE - 8)));
+			}
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(data, length);
+		}
+
+		/** Writes an unsigned value 7 bits at a time, with the high bit of each byte set if more bytes follow **/
+		private void writeVarLong(long value) {
+			require(10);
+			while((value & ~0x7FL) != 0) {
+				data[length++] = (byte)(value | 0x80);
+				value >>>= 7;
+			}
+			data[length++] = (byte)value;
+		}
+
+		/** Writes a signed value so that numbers close to 0 take the fewest bytes **/
+		private void writeZigZag(long value) {
+			writeVarLong(value << 1 ^ value >> 63);
+		}
+
+		@Override
+		public void writeObject(Transportable object) {
+			//null objects are just a type ID of 0
+			if(object == null) {
+				writeType(NULL_TYPE);
+				return;
+			}
+
+			Short typeID = typeIDs.get(object.getClass());
+			if(typeID == null)
+				throw new TypeNotRegisteredException("Class " + object.getClass().getName() + " is not registered");
+			writeType(typeID);
+
+			//the length of the data (EXCLUDING THE TYPE), which isn't known until the object has been written
+			if(compact) {
+				//reserve one byte, and move the data if the length needs more
+				require(1);
+				int lengthIndex = length++;
+				object.write(this);
+				int size = length - lengthIndex - 1;
+				int extra = (Integer.SIZE - Integer.numberOfLeadingZeros(size) - 1) / 7;
+				if(extra > 0) {
+					require(extra);
+					System.arraycopy(data, lengthIndex + 1, data, lengthIndex + 1 + extra, size);
+				}
+				int end = length + extra;
+				length = lengthIndex;
+				writeVarLong(size);
+				length = end;
+			} else {
+				require(Integer.BYTES);
+				int lengthIndex = length;
+				length += Integer.BYTES;
+				object.write(this);
+				Bytes.putInteger(data, lengthIndex, length - lengthIndex - Integer.BYTES);
+			}
+		}
+
+		/** Writes a count or length, which is never negative, so the compact encoding doesn't zigzag encode it **/
+		private void writeLength(int value) {
+			if(compact) {
+				writeVarLong(value);
+			} else {
+				writeInteger(value);
+			}
+		}
+
+		private void writeType(short type) {
+			if(compact) {
+				writeVarLong(Short.toUnsignedInt(type));
+			} else {
+				writeShort(type);
+			}
+		}
+
+		@Override
+		public void writeSections(int count, ObjIntConsumer<TransportableDataWriter> section) {
+			if(count < 0 || count > MAX_SECTIONS)
+				throw new IllegalArgumentException("invalid section count " + count);
+			BufferWriter[] sections = new BufferWriter[count];
+			IntStream.range(0, count).parallel().forEach(index -> {
+				BufferWriter writer = new BufferWriter();
+				writer.compact = compact;
+				section.accept(writer, index);
+				sections[index] = writer;
+			});
+			writeLength(count);
+			for(BufferWriter writer : sections) {
+				writeLength(writer.length);
+			}
+			for(BufferWriter writer : sections) {
+				writeBytes(writer.data, 0, writer.length);
+			}
+		}
+
+		@Override
+		public void writeDouble(double value) {
+			if(compact) {
+				//the low bits of the significand are usually 0, and become the high bits once reversed
+				writeVarLong(Long.reverse(Double.doubleToRawLongBits(value)));
+			} else {
+				writeLong(Double.doubleToRawLongBits(value));
+			}
+		}
+
+		@Override
+		public void writeFloat(float value) {
+			if(compact) {
+				writeVarLong(Integer.toUnsignedLong(Integer.reverse(Float.floatToRawIntBits(value))));
+			} else {
+				writeInteger(Float.floatToRawIntBits(value));
+			}
+		}
+
+		@Override
+		public void writeLong(long value) {
+			if(compact) {
+				writeZigZag(value);
+			} else {
+				require(Long.BYTES);
+				Bytes.putLong(data, length, value);
+				length += Long.BYTES;
+			}
+		}
+
+		@Override
+		public void writeInteger(int value) {
+			if(compact) {
+				writeZigZag(value);
+			} else {
+				require(Integer.BYTES);
+				Bytes.putInteger(data, length, value);
+				length += Integer.BYTES;
+			}
+		}
 
-		Short typeID = serializeLookup.get(object.getClass());
-		if(typeID == null)
-			throw new TypeNotRegisteredException("Class " + object.getClass().getName() + " is not registered");
-		byte[] objectBytes = object.getBytes(this);
+		@Override
+		public void writeShort(short value) {
+			if(compact) {
+				writeZigZag(value);
+			} else {
+				require(Short.BYTES);
+				Bytes.putShort(data, length, value);
+				length += Short.BYTES;
+			}
+		}
 
-		//serialized object length, typeID, object data
-		byte[] data = Bytes.concatenate(Short.BYTES + Integer.BYTES, objectBytes);
+		@Override
+		public void writeBoolean(boolean value) {
+			writeByte(value ? (byte)1 : 0);
+		}
 
-		//put the short value representing the type of object serialized after the data length
-		Bytes.putShort(data, 0, typeID);
+		@Override
+		public void writeByte(byte value) {
+			require(Byte.BYTES);
+			data[length++] = value;
+		}
 
-		//first four bytes are the length of the data (EXCLUDING THE TYPE)
-		Bytes.putInteger(data, Short.BYTES, objectBytes.length);
+		@Override
+		public void writeBytes(byte[] bytes) {
+			writeBytes(bytes, 0, bytes.length);
+		}
 
-		return data;
+		@Override
+		public void writeBytes(byte[] bytes, int offset, int count) {
+			require(count);
+			System.arraycopy(bytes, offset, data, length, count);
+			length += count;
+		}
 	}
 
 	@SuppressWarnings("unchecked")
@@ -68,19 +382,36 @@ public class SerializerReaderWriter implements Serializer, Deserializer {
 		return getReader(buffer).readObject();
 	}
 
+	/**
+	 * Deserializes an object on the common {@link ForkJoinPool}, where the sections of the object and of the objects
+	 * it contains are read in parallel.
+	 * @param data the serialized object, starting at its position
+	 * @param compressed true if the data was compressed by {@link Bytes#compress(byte[])}
+	 * @return a future completed with the object, or with the exception thrown while reading it
+	 */
+	public <T extends Transportable> CompletableFuture<T> deserializeAsync(ByteBuffer data, boolean compressed) {
+		return CompletableFuture.supplyAsync(() -> (compressed ? getCompressedReader(data) : getReader(data)).readObject());
+	}
+
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T> T deserialize(byte[] object) throws TypeNotRegisteredException {
 		return getReader(object).readObject();
 	}
 
-	private TransportableDataReader getReader(final ByteBuffer bytes) {
+	/** @return a reader of the objects and primitives in {@code bytes}, starting at its position **/
+	public TransportableDataReader getReader(final ByteBuffer bytes) {
 		return new AbstractDataReader() {
 			@Override
 			public int remaining() {
 				return bytes.remaining();
 			}
 
+			@Override
+			long position() {
+				return bytes.position();
+			}
+
 			@Override
 			public void skip(int countBytes) {
 				bytes.position(bytes.position() + countBytes);
@@ -129,16 +460,45 @@ public class SerializerReaderWriter implements Serializer, Deserializer {
 			public void readBytes(byte[] dest, int offset) {
 				bytes.get(dest, offset, dest.length);
 			}
+
+			@Override
+			public void readLongs(long[] dest, int offset, int length) {
+				bytes.asLongBuffer().get(dest, offset, length);
+				bytes.position(bytes.position() + length * Long.BYTES);
+			}
+
+			@Override
+			public void readInts(int[] dest, int offset, int length) {
+				bytes.asIntBuffer().get(dest, offset, length);
+				bytes.position(bytes.position() + length * Integer.BYTES);
+			}
+
+			@Override
+			public void readFloats(float[] dest, int offset, int length) {
+				bytes.asFloatBuffer().get(dest, offset, length);
+				bytes.position(bytes.position() + length * Float.BYTES);
+			}
 		};
 	}
 
-	private TransportableDataReader getReader(final byte[] bytes) {
+	/** @return a reader of the objects and primitives in {@code bytes}, starting at the first byte **/
+	public TransportableDataReader getReader(final byte[] bytes) {
+		return getReader(bytes, 0, bytes.length);
+	}
+
+	/** @return a reader of the bytes from {@code start} to {@code end}, which can't tell if it reads past the end **/
+	private AbstractDataReader getReader(final byte[] bytes, final int start, final int end) {
 		return new AbstractDataReader() {
-			private int index = 0; //skip past object size and type
+			private int index = start;
 
 			@Override
 			public int remaining() {
-				return bytes.length - index; //TODO is this implemented correctly?
+				return end - index;
+			}
+
+			@Override
+			long position() {
+				return index;
 			}
 
 			@Override
@@ -147,18 +507,69 @@ public class SerializerReaderWriter implements Serializer, Deserializer {
 			}
 
 			private void checkIndex(int index) {
-				if(index >= bytes.length)
+				if(index > end)
 					throw new IndexOutOfBoundsException("not enough data remaining");
 			}
 
+			@Override
+			AbstractDataReader section(int length) {
+				Objects.checkFromIndexSize(index, length, end);
+				return getReader(bytes, index, index += length);
+			}
+
 			@Override
 			public byte readByte() {
 				return bytes[index++];
 			}
 
+			@Override
+			public short readShort() {
+				short value = Bytes.getShort(bytes, index);
+				index += Short.BYTES;
+				return value;
+			}
+
+			@Override
+			public int readInteger() {
+				int value = Bytes.getInteger(bytes, index);
+				index += Integer.BYTES;
+				return value;
+			}
+
+			@Override
+			public long readLong() {
+				long value = Bytes.getLong(bytes, index);
+				index += Long.BYTES;
+				return value;
+			}
+
+			@Override
+			public void readLongs(long[] dest, int offset, int length) {
+				Objects.checkFromIndexSize(index, length * Long.BYTES, end);
+				for(int end = offset + length; offset < end; offset++, index += Long.BYTES) {
+					dest[offset] = Bytes.getLong(bytes, index);
+				}
+			}
+
+			@Override
+			public void readInts(int[] dest, int offset, int length) {
+				Objects.checkFromIndexSize(index, length * Integer.BYTES, end);
+				for(int end = offset + length; offset < end; offset++, index += Integer.BYTES) {
+					dest[offset] = Bytes.getInteger(bytes, index);
+				}
+			}
+
+			@Override
+			public void readFloats(float[] dest, int offset, int length) {
+				Objects.checkFromIndexSize(index, length * Float.BYTES, end);
+				for(int end = offset + length; offset < end; offset++, index += Float.BYTES) {
+					dest[offset] = Bytes.getFloat(bytes, index);
+				}
+			}
+
 			@Override
 			public byte[] readBytes(int count) {
-				if(bytes.length < index + count || count < 0)
+				if(end - index < count || count < 0)
 					throw new IndexOutOfBoundsException("not enough data remaining");
 				byte[] data = new byte[count];
 				System.arraycopy(bytes, index, data, 0, data.length);
@@ -168,8 +579,9 @@ public class SerializerReaderWriter implements Serializer, Deserializer {
 
 			@Override
 			public void readBytes(byte[] dest, int offset) {
-				if(dest.length < bytes.length - index) {
+				if(dest.length - offset <= end - index) {
 					System.arraycopy(bytes, index, dest, offset, dest.length - offset);
+					index += dest.length - offset;
 				} else {
 					throw new IndexOutOfBoundsException("not enough data remaining");
 				}
@@ -177,21 +589,371 @@ public class SerializerReaderWriter implements Serializer, Deserializer {
 		};
 	}
 
+	/**
+	 * Reads data compressed by {@link Bytes#compress(byte[])} from a channel, inflating a buffer at a time, so
+	 * objects can be deserialized from a large file without reading the whole file or its decompressed contents into
+	 * memory. The channel isn't closed by the reader. The length of the decompressed data isn't known, so the reader
+	 * doesn't support {@link TransportableDataReader#remaining()}.
+	 */
+	public TransportableDataReader getCompressedReader(ReadableByteChannel compressed) {
+		return new InflatingDataReader(compressed, ByteBuffer.allocate(COMPRESSED_BUFFER_SIZE).flip());
+	}
+
+	/** Reads data compressed by {@link Bytes#compress(byte[])}, inflating a buffer at a time **/
+	public TransportableDataReader getCompressedReader(ByteBuffer compressed) {
+		return new InflatingDataReader(null, compressed);
+	}
+
+	private final class InflatingDataReader extends AbstractDataReader {
+		private final ReadableByteChannel channel;
+		private final ByteBuffer input, output;
+		private final Inflater inflater;
+		/** The number of bytes inflated before the bytes in {@link #output} **/
+		private long inflated;
+
+		InflatingDataReader(ReadableByteChannel channel, ByteBuffer input) {
+			this.channel = channel;
+			this.input = input;
+			this.output = ByteBuffer.allocate(INFLATED_BUFFER_SIZE).flip();
+			this.inflater = new Inflater(true);
+			if(channel == null) inflater.setInput(input);
+		}
+
+		/**
+		 * Inflates more data after the unread bytes in the output buffer until at least {@code count} are unread,
+		 * which can't be more than {@link #INFLATED_BUFFER_SIZE}.
+		 */
+		private void require(int count) {
+			if(output.remaining() >= count) return;
+			inflated += output.position();
+			output.compact();
+			try {
+				while(output.position() < count) {
+					if(inflater.finished()) {
+						output.flip();
+						throw new BufferUnderflowException();
+					} else if(inflater.needsInput()) {
+						if(channel == null || channel.read(input.compact()) < 0) {
+							inflater.end();
+							throw new SerializationException("compressed data ends before the end of the stream");
+						}
+						inflater.setInput(input.flip());
+					}
+					if(inflater.inflate(output) == 0 && inflater.needsDictionary())
+						throw new SerializationException("compressed data requires a dictionary");
+				}
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			} catch(DataFormatException e) {
+				throw new SerializationException("invalid compressed data", e);
+			}
+			output.flip();
+			if(inflater.finished()) inflater.end();
+		}
+
+		/**
+		 * The length of the decompressed data isn't known until all of it has been inflated, which would take
+		 * memory proportional to the rest of the data, so it isn't supported.
+		 * @throws UnsupportedOperationException always
+		 */
+		@Override
+		public int remaining() {
+			throw new UnsupportedOperationException("the length of compressed data isn't known until it is inflated");
+		}
+
+		@Override
+		long position() {
+			return inflated + output.position();
+		}
+
+		@Override
+		public void skip(int count) {
+			while(count > 0) {
+				require(Math.min(count, INFLATED_BUFFER_SIZE));
+				int skipped = Math.min(count, output.remaining());
+				output.position(output.position() + skipped);
+				count -= skipped;
+			}
+		}
+
+		@Override
+		public byte readByte() {
+			require(Byte.BYTES);
+			return output.get();
+		}
+
+		@Override
+		public short readShort() {
+			require(Short.BYTES);
+			return output.getShort();
+		}
+
+		@Override
+		public int readInteger() {
+			require(Integer.BYTES);
+			return output.getInt();
+		}
+
+		@Override
+		public long readLong() {
+			require(Long.BYTES);
+			return output.getLong();
+		}
+
+		@Override
+		public byte[] readBytes(int count) {
+			if(count < 0)
+				throw new IllegalArgumentException("negative count");
+			byte[] data = new byte[count];
+			readBytes(data, 0);
+			return data;
+		}
+
+		@Override
+		public void readBytes(byte[] dest, int offset) {
+			while(offset < dest.length) {
+				require(Math.min(dest.length - offset, INFLATED_BUFFER_SIZE));
+				int count = Math.min(dest.length - offset, output.remaining());
+				output.get(dest, offset, count);
+				offset += count;
+			}
+		}
+
+		@Override
+		public void readLongs(long[] dest, int offset, int length) {
+			for(int end = offset + length; offset < end;) {
+				int count = Math.min(end - offset, INFLATED_BUFFER_SIZE / Long.BYTES);
+				require(count * Long.BYTES);
+				output.asLongBuffer().get(dest, offset, count);
+				output.position(output.position() + count * Long.BYTES);
+				offset += count;
+			}
+		}
+
+		@Override
+		public void readInts(int[] dest, int offset, int length) {
+			for(int end = offset + length; offset < end;) {
+				int count = Math.min(end - offset, INFLATED_BUFFER_SIZE / Integer.BYTES);
+				require(count * Integer.BYTES);
+				output.asIntBuffer().get(dest, offset, count);
+				output.position(output.position() + count * Integer.BYTES);
+				offset += count;
+			}
+		}
+
+		@Override
+		public void readFloats(float[] dest, int offset, int length) {
+			for(int end = offset + length; offset < end;) {
+				int count = Math.min(end - offset, INFLATED_BUFFER_SIZE / Float.BYTES);
+				require(count * Float.BYTES);
+				output.asFloatBuffer().get(dest, offset, count);
+				output.position(output.position() + count * Float.BYTES);
+				offset += count;
+			}
+		}
+	}
+
+	/** Reads objects serialized by {@link #serializeCompact(Transportable)} from the bytes of another reader **/
+	private final class CompactDataReader extends AbstractDataReader {
+		private final AbstractDataReader data;
+
+		CompactDataReader(AbstractDataReader data) {
+			this.data = data;
+		}
+
+		private long readVarLong(int maxBytes) {
+			long value = 0;
+			for(int shift = 0; shift < maxBytes * 7; shift += 7) {
+				byte b = data.readByte();
+				value |= (long)(b & 0x7F) << shift;
+				if(b >= 0) return value;
+			}
+			throw new SerializationException("variable length integer is too long");
+		}
+
+		private int readVarInt() {
+			return (int)readVarLong(5);
+		}
+
+		@Override
+		short readType() {
+			return (short)readVarInt();
+		}
+
+		@Override
+		int readLength() {
+			return readVarInt();
+		}
+
+		@Override
+		AbstractDataReader section(int length) {
+			return new CompactDataReader(data.section(length));
+		}
+
+		@Override
+		public int remaining() {
+			return data.remaining();
+		}
+
+		@Override
+		long position() {
+			return data.position();
+		}
+
+		@Override
+		public void skip(int bytes) {
+			data.skip(bytes);
+		}
+
+		@Override
+		public byte readByte() {
+			return data.readByte();
+		}
+
+		@Override
+		public byte[] readBytes(int count) {
+			return data.readBytes(count);
+		}
+
+		@Override
+		public void readBytes(byte[] dest, int offset) {
+			data.readBytes(dest, offset);
+		}
+
+		@Override
+		public short readShort() {
+			return (short)readInteger();
+		}
+
+		@Override
+		public int readInteger() {
+			int value = readVarInt();
+			return value >>> 1 ^ -(value & 1);
+		}
+
+		@Override
+		public long readLong() {
+			long value = readVarLong(10);
+			return value >>> 1 ^ -(value & 1);
+		}
+
+		@Override
+		public float readFloat() {
+			return Float.intBitsToFloat(Integer.reverse(readVarInt()));
+		}
+
+		@Override
+		public double readDouble() {
+			return Double.longBitsToDouble(Long.reverse(readVarLong(10)));
+		}
+
+		@Override
+		public void readLongs(long[] dest, int offset, int length) {
+			Objects.checkFromIndexSize(offset, length, dest.length);
+			for(int end = offset + length; offset < end; offset++) {
+				dest[offset] = readLong();
+			}
+		}
+
+		@Override
+		public void readInts(int[] dest, int offset, int length) {
+			Objects.checkFromIndexSize(offset, length, dest.length);
+			for(int end = offset + length; offset < end; offset++) {
+				dest[offset] = readInteger();
+			}
+		}
+
+		@Override
+		public void readFloats(float[] dest, int offset, int length) {
+			Objects.checkFromIndexSize(offset, length, dest.length);
+			for(int end = offset + length; offset < end; offset++) {
+				dest[offset] = readFloat();
+			}
+		}
+	}
+
 	private abstract class AbstractDataReader implements TransportableDataReader {
+		/** @return the number of bytes read so far **/
+		abstract long position();
+
+		/** @return a reader of the next {@code length} bytes, which are skipped by this reader **/
+		AbstractDataReader section(int length) {
+			byte[] data = readBytes(length);
+			return getReader(data, 0, data.length);
+		}
+
+		/**
+		 * Reads each section on a {@link ForkJoinPool} as soon as its data has been read, on the pool of the calling
+		 * thread if it is a worker thread or otherwise on the common pool, and waits until every section has been read.
+		 * At most one more section than the pool's parallelism is in flight, and a section's reader is released as
+		 * soon as it has been read, so a reader that copies each section, like a compressed reader, only holds a few
+		 * sections in memory at once.
+		 */
+		@Override
+		public int readSections(ObjIntConsumer<TransportableDataReader> section) {
+			int count = readLength();
+			if(count < 0 || count > MAX_SECTIONS)
+				throw new SerializationException("invalid section count " + count);
+			int[] lengths = new int[count];
+			for(int i = 0; i < count; i++) {
+				lengths[i] = readLength();
+			}
+			boolean worker = ForkJoinTask.inForkJoinPool();
+			int inFlight = (worker ? ForkJoinTask.getPool() : ForkJoinPool.commonPool()).getParallelism() + 1;
+			ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[count];
+			AbstractDataReader[] readers = new AbstractDataReader[count];
+			for(int i = 0; i < count; i++) {
+				if(lengths[i] < 0)
+					throw new SerializationException("section " + i + " has negative length " + lengths[i]);
+				if(i >= inFlight) {
+					tasks[i - inFlight].join();
+					tasks[i - inFlight] = null;
+				}
+				readers[i] = section(lengths[i]);
+				int index = i;
+				tasks[i] = ForkJoinTask.adapt(() -> {
+					AbstractDataReader reader = readers[index];
+					section.accept(reader, index);
+					if(reader.remaining() != 0)
+						throw new SerializationException("section " + index + " has " + reader.remaining() + " bytes left over");
+					readers[index] = null;
+				});
+				if(worker) {
+					tasks[i].fork();
+				} else {
+					ForkJoinPool.commonPool().execute(tasks[i]);
+				}
+			}
+			for(int i = Math.max(0, count - inFlight); i < count; i++) {
+				tasks[i].join();
+			}
+			return count;
+		}
+
+		/** @return the type ID at the start of an object **/
+		short readType() {
+			return readShort();
+		}
+
+		/** @return the length of the data of an object, which follows its type, or a section count or length **/
+		int readLength() {
+			return readInteger();
+		}
+
 		@Override
 		@SuppressWarnings("unchecked")
 		public <T extends Transportable> T readObject() {
 			try {
-				short type = readShort();
+				short type = readType();
 				return switch(type) {
 					default -> {
-						int length = readInteger();
-						int totalRemaining = remaining();
-						ObjectBuilder func = deserializeLookup.get(type); //get associated function
+						int length = readLength();
+						long start = position();
+						ObjectBuilder func = deserializer(type); //get associated function
 						if(func == null) throw new TypeNotRegisteredException(
 							"Cannot deserialize unregistered type " + type);
 						T obj = (T)func.apply(this);
-						int bytesRead = totalRemaining - remaining();
+						long bytesRead = position() - start;
 						if(bytesRead > length) {
 							throw new SerializationException("Read " +
 							 (bytesRead - length) + " bytes too many while deserializing type "
@@ -207,6 +969,13 @@ public class SerializerReaderWriter implements Serializer, Deserializer {
 					case NULL_TYPE -> {
 						yield null;
 					}
+
+					case COMPACT_TYPE -> {
+						byte version = readByte();
+						if(version != COMPACT_VERSION)
+							throw new SerializationException("unsupported compact encoding version " + version);
+						yield new CompactDataReader(this).readObject();
+					}
 				};
 			} catch(IndexOutOfBoundsException | BufferUnderflowException e) {
 				throw new SerializationException("object read too many bytes and reached the end of the data");
@@ -223,30 +992,6 @@ public class SerializerReaderWriter implements Serializer, Deserializer {
 			return Float.intBitsToFloat(readInteger());
 		}
 
-		@Override
-		public long readLong() {
-			long value = 0;
-			for (int i = 0; i < 8; i++) {
-				value = (value << 8) + (readByte() & 0xff);
-				//TODo does value = (value << 8) & readByte() work?
-			}
-			return value;
-		}
-
-		@Override
-		public int readInteger() {
-			return
-				(readByte() << 24) |
-				((readByte() & 255) << 16) |
-				((readByte() & 255) << 8) |
-				((readByte() & 255));
-		}
-
-		@Override
-		public short readShort() {
-			return (short)(((readByte() & 255) << 8) | ((readByte() & 255)));
-		}
-
 		@Override
 		public boolean readBoolean() {
 			return readByte() == 1;
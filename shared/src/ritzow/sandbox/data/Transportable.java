@@ -1,14 +1,14 @@
 package ritzow.sandbox.data;
 
 /**
- * Instances of Transportable can be passed to ByteUtil.serialize to convert them into byte array packages containing the data from getBytes and header information
- * such as class name and length of data. Transportable objects should also implement a public constructor that takes a byte[] as its sole argument, in order to
- * deserialize the data returned by getBytes.
+ * Instances of Transportable can be passed to a Serializer to convert them into byte array packages containing the data written by write and header information
+ * such as the type and length of the data. Transportable objects should also be registered with a constructor that takes a TransportableDataReader, in order to
+ * deserialize the data written by write.
  * @author Solomon Ritzow
  *
  */
 public interface Transportable {
-	/** @param ser The serializer to use to encode the data.
-	 * @return a byte array representing the object, which can be restored exactly by calling the byte array constructor of the object **/
-	byte[] getBytes(Serializer ser);
+	/** @param out The writer to write the object's data to, including any objects it contains, which can be restored exactly by the
+	 * object's registered constructor **/
+	void write(TransportableDataWriter out);
 }
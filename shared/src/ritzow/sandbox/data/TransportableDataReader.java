@@ -1,5 +1,15 @@
 package ritzow.sandbox.data;
 
+import java.util.function.ObjIntConsumer;
+
 public interface TransportableDataReader extends DataReader {
 	<T extends Transportable> T readObject();
+
+	/**
+	 * Reads the sections written by {@link TransportableDataWriter#writeSections}, which may be read concurrently
+	 * on other threads, and returns once every section has been read.
+	 * @param section reads all of the data of the section with the given index
+	 * @return the number of sections
+	 */
+	int readSections(ObjIntConsumer<TransportableDataReader> section);
 }
@@ -0,0 +1,16 @@
+package ritzow.sandbox.data;
+
+import java.util.function.ObjIntConsumer;
+
+public interface TransportableDataWriter extends DataWriter {
+	/** Writes the type and length of an object followed by its data, which can be read by {@link TransportableDataReader#readObject()} **/
+	void writeObject(Transportable object);
+
+	/**
+	 * Writes the number of sections and the length of each, followed by the data of each section, which may be
+	 * written concurrently on other threads, each to its own writer.
+	 * @param count the number of sections
+	 * @param section writes the section with the given index
+	 */
+	void writeSections(int count, ObjIntConsumer<TransportableDataWriter> section);
+}
@@ -59,7 +59,6 @@ public final class Protocol {
 		//TODO separate removing entity from world and deleting entity
 		TYPE_SERVER_DELETE_ENTITY = 6,
 		TYPE_SERVER_CLIENT_DISCONNECT = 7,
-		TYPE_SERVER_REMOVE_BLOCK = 9,
 		TYPE_CLIENT_CONNECT_REQUEST = 10,
 		TYPE_CLIENT_DISCONNECT = 11,
 		TYPE_CLIENT_PLAYER_STATE = 12,
@@ -68,8 +67,12 @@ public final class Protocol {
 		TYPE_CLIENT_BOMB_THROW = 16,
 		TYPE_CLIENT_WORLD_BUILT = 17,
 		TYPE_CLIENT_PLACE_BLOCK = 18,
-		TYPE_SERVER_PLACE_BLOCK = 19,
-		TYPE_SERVER_CLIENT_SLOT_USE_COOLDOWN = 20;
+		TYPE_SERVER_CLIENT_SLOT_USE_COOLDOWN = 20,
+		//the x and y coordinates and size of a block grid to copy into the world, which is extended to the right if
+		//the block grid doesn't fit, followed by world data messages
+		TYPE_SERVER_WORLD_EXTEND = 21,
+		//a count of changed cells, each an x and y coordinate followed by the block in every layer
+		TYPE_SERVER_BLOCK_CHANGES = 22;
 
 	/** Serialization Type ID **/
 	public static final short
@@ -0,0 +1,67 @@
+package ritzow.sandbox.util;
+
+import ritzow.sandbox.world.World;
+
+/**
+ * Advances a world in fixed size ticks regardless of how often it is called, by accumulating elapsed time
+ * and running as many whole ticks as have elapsed. The time left over is kept for the next call and is
+ * available as a fraction of a tick through {@link #interpolation()}, for rendering between the last two ticks.
+ * @author Solomon Ritzow
+ */
+public final class FixedTimestep {
+	private final long tickNanos;
+	private final int maxTicks;
+	private long lastTime, accumulated;
+
+	/**
+	 * @param ticksPerSecond the number of world updates to run per second of real time.
+	 * @param maxElapsed the most time to simulate in a single call to {@link #update(World, long)}, time beyond
+	 * that is discarded so that a slow update can't cause every following update to fall behind. At least one
+	 * tick is always run once a tick has elapsed.
+	 */
+	public FixedTimestep(int ticksPerSecond, long maxElapsed) {
+		if(ticksPerSecond <= 0)
+			throw new IllegalArgumentException("ticksPerSecond must be positive");
+		this.tickNanos = Utility.frameRateToFrameTimeNanos(ticksPerSecond);
+		this.maxTicks = (int)Math.max(1, Math.min(Integer.MAX_VALUE, maxElapsed / tickNanos));
+		this.lastTime = System.nanoTime();
+	}
+
+	/** @return the amount of time simulated by each tick, in nanoseconds **/
+	public long tickNanos() {
+		return tickNanos;
+	}
+
+	/** Discards accumulated time, so that the next update only simulates time after {@code time} **/
+	public void reset(long time) {
+		lastTime = time;
+		accumulated = 0;
+	}
+
+	/**
+	 * Runs every tick that has elapsed up to {@code time}.
+	 * @param world the world to update.
+	 * @param time the current time from {@link System#nanoTime()}.
+	 * @return the number of ticks run.
+	 */
+	public int update(World world, long time) {
+		accumulated += time - lastTime;
+		lastTime = time;
+		int ticks = 0;
+		while(accumulated >= tickNanos) {
+			if(ticks == maxTicks) {
+				accumulated %= tickNanos;
+				break;
+			}
+			world.update(tickNanos);
+			accumulated -= tickNanos;
+			ticks++;
+		}
+		return ticks;
+	}
+
+	/** @return the fraction of a tick that has elapsed since the last tick, from 0 (inclusive) to 1 (exclusive) **/
+	public float interpolation() {
+		return (float)accumulated / tickNanos;
+	}
+}
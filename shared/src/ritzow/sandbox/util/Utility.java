@@ -1,6 +1,7 @@
 package ritzow.sandbox.util;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
@@ -12,6 +13,8 @@ import java.util.SplittableRandom;
 import java.util.concurrent.locks.LockSupport;
 import java.util.function.IntFunction;
 import ritzow.sandbox.data.Bytes;
+import ritzow.sandbox.data.SerializerReaderWriter;
+import ritzow.sandbox.data.Transportable;
 import ritzow.sandbox.network.Protocol;
 import ritzow.sandbox.world.BlockGrid;
 import ritzow.sandbox.world.World;
@@ -77,6 +80,18 @@ public final class Utility {
 		return Bytes.decompress(load(file, ByteBuffer::allocate));
 	}
 
+	/**
+	 * Deserializes an object from a compressed file while it is read, so only a small buffer of the file and of the
+	 * decompressed data is in memory at once, unlike {@link #loadCompressedFile(Path)}.
+	 */
+	public static <T extends Transportable> T loadCompressedObject(Path file, SerializerReaderWriter serializer) throws IOException {
+		try(FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+			return serializer.getCompressedReader(reader).readObject();
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
 	public static ByteBuffer load(Path file, IntFunction<ByteBuffer> buffer) throws IOException {
 		try(FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
 			long length = reader.size();
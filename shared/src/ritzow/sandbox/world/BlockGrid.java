@@ -1,50 +1,294 @@
 package ritzow.sandbox.world;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import ritzow.sandbox.data.Bytes;
-import ritzow.sandbox.data.Serializer;
 import ritzow.sandbox.data.Transportable;
 import ritzow.sandbox.data.TransportableDataReader;
+import ritzow.sandbox.data.TransportableDataWriter;
 import ritzow.sandbox.util.Optimized;
 import ritzow.sandbox.world.block.Block;
 
-public final class BlockGrid implements Transportable {
-	private final Block[] blocks;
-	private final int width, height, layers;
+/**
+ * Stores the blocks of a world in {@link Chunk chunks} of {@link Chunk#SIZE} by {@link Chunk#SIZE} cells.
+ * A chunk is only allocated once a block is placed in it, so empty regions such as the sky cost a single null
+ * reference per chunk. Chunks emptied by {@link #fill} are released immediately, while chunks emptied one block
+ * at a time by {@link #set} are kept until {@link #releaseEmptyChunks()} so that repeatedly placing and removing
+ * a block doesn't reallocate the chunk. Every chunk changed by {@link #set} or {@link #fill} is marked dirty until
+ * it is cleared, including chunks that were released. A grid can be made wider with {@link #extend(int)}, which only
+ * adds chunks to the end of the chunk array, so a world can grow to the right without copying any blocks.
+ * Chunks returned by {@link #share(int, int)} are copied the next time the grid changes them, so that another thread
+ * can read them while the world keeps updating. Chunks that have been saved can be {@link #unload(int, int) unloaded}
+ * to free memory, and are loaded from the grid's {@link ChunkSource} the next time any of their cells is accessed.
+ * Changes to blocks are also recorded in the grid's {@link #getJournal() change journal} once it has been requested,
+ * so that networking, lighting, and other consumers can each find out what changed at their own pace.
+ * A grid is serialized as a palette of the distinct blocks it contains followed by runs of equal cells in each layer,
+ * in rows from the bottom left, so large areas of the same block take a few bytes. Each row of chunks is a separate
+ * band with its own palette and runs, so bands are written and read in parallel.
+ * @author Solomon Ritzow
+ */
+public final class BlockGrid implements Transportable, Iterable<Chunk> {
+	private final int height, layers;
+	private int width;
+	/** The number of chunks in each row and column, including partially used chunks at the right and top **/
+	private final int chunksHigh;
+	private int chunksWide;
+	/** Chunks indexed by {@code chunksHigh * chunkX + chunkY}, null if the chunk contains no blocks **/
+	private Chunk[] chunks;
+	/** One bit per chunk index, set if the chunk has changed since it was last cleared **/
+	private long[] dirty;
+	/** One bit per chunk index, set if the chunk has been shared and must be copied before it is changed **/
+	private long[] shared;
+	/** One bit per chunk index, set if the chunk has been unloaded and must be loaded before it is accessed **/
+	private long[] unloaded;
+	private ChunkSource source;
+
+	/** Loaded chunks are published with release and acquire ordering, since they can be loaded by parallel updates **/
+	private static final VarHandle CHUNKS = MethodHandles.arrayElementVarHandle(Chunk[].class);
+	private static final VarHandle BITS = MethodHandles.arrayElementVarHandle(long[].class);
 
 	public static final int INVALID_LAYER = -1;
 
+	/** Receives the bounds of every region of blocks changed by {@link #set}, {@link #place}, or {@link #fill} **/
+	public interface ChangeListener {
+		void onChange(int x, int y, int width, int height);
+	}
+
+	private ChangeListener listener;
+	/** Records changes once requested by {@link #getJournal()}, otherwise null **/
+	private ChangeJournal journal;
+	private static final int JOURNAL_CAPACITY = 1 << 12;
+	/** Precede grids serialized as runs or as bands of runs, grids serialized one block per cell start with their width instead **/
+	private static final int FORMAT_RUNS = -1, FORMAT_BANDS = -2;
+
+	/** Provides the contents of unloaded chunks **/
+	public interface ChunkSource {
+		/** @return the chunk at the position, or null if the chunk is empty **/
+		Chunk load(int chunkX, int chunkY);
+	}
+
+	/** A chunk source that keeps the chunks given to it, so that chunks can be unloaded whether or not they are saved **/
+	public interface ChunkStore extends ChunkSource {
+		/**
+		 * Stores the contents of a chunk, which must be returned by {@link #load(int, int)} until it is replaced.
+		 * @param chunk the chunk, which must not be changed or kept, or null if the chunk is empty
+		 */
+		void store(int chunkX, int chunkY, Chunk chunk);
+	}
+
 	public BlockGrid(int layers, int width, int height) {
-		blocks = new Block[layers * width * height];
+		checkSize(layers, width, height);
 		this.width = width;
 		this.layers = layers;
 		this.height = height;
+		this.chunksWide = chunksCovering(width);
+		this.chunksHigh = chunksCovering(height);
+		this.chunks = new Chunk[Math.multiplyExact(chunksWide, chunksHigh)];
+		this.dirty = new long[(chunks.length + 63) >>> 6];
+		this.shared = new long[dirty.length];
+		this.unloaded = new long[dirty.length];
 	}
 
+	/**
+	 * Reads a grid written by {@link #write(TransportableDataWriter)}, the previous format of runs without bands, or
+	 * the original format of one serialized block per cell.
+	 */
 	public BlockGrid(TransportableDataReader data) {
 		//instance fields are evaluated inthe order they appear in the constructor
-		this.width = data.readInteger();
+		int format = data.readInteger();
+		this.width = format == FORMAT_RUNS || format == FORMAT_BANDS ? data.readInteger() : format;
 		this.height = data.readInteger();
 		this.layers = data.readInteger();
-		blocks = new Block[layers * width * height];
-		for(int i = 0; i < blocks.length; i++) {
-			blocks[i] = data.readObject();
+		checkSize(layers, width, height);
+		this.chunksWide = chunksCovering(width);
+		this.chunksHigh = chunksCovering(height);
+		this.chunks = new Chunk[Math.multiplyExact(chunksWide, chunksHigh)];
+		this.dirty = new long[(chunks.length + 63) >>> 6];
+		this.shared = new long[dirty.length];
+		this.unloaded = new long[dirty.length];
+		if(format == FORMAT_BANDS) {
+			//bands only allocate and change their own chunks, nothing is shared or unloaded, so they can be read in parallel
+			int count = data.readSections((band, index) -> {
+				if(index >= chunksHigh)
+					throw new IllegalArgumentException("band " + index + " is outside the grid");
+				readRuns(band, index << Chunk.SHIFT, bandEnd(index));
+			});
+			if(count != chunksHigh)
+				throw new IllegalArgumentException(count + " bands in place of " + chunksHigh);
+		} else if(format == FORMAT_RUNS) {
+			readRuns(data, 0, height);
+		} else {
+			for(int row = 0; row < height; row++) {
+				for(int column = 0; column < width; column++) {
+					for(int layer = 0; layer < layers; layer++) {
+						Block block = data.readObject();
+						if(block != null) {
+							chunkForWrite(column, row).set(layer, column & Chunk.MASK, row & Chunk.MASK, block);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/** @return the row after the last row of a band **/
+	private int bandEnd(int band) {
+		return (int)Math.min(height, (long)(band + 1) << Chunk.SHIFT);
+	}
+
+	/** Reads the palette and then the runs of every layer of some rows, setting the cells of each run as it is read **/
+	private void readRuns(TransportableDataReader data, int startRow, int endRow) {
+		int paletteSize = data.readInteger();
+		if(paletteSize < 0 || paletteSize > (long)width * height * layers)
+			throw new IllegalArgumentException("invalid palette size " + paletteSize);
+		Block[] palette = new Block[paletteSize + 1];
+		for(int i = 1; i < palette.length; i++) {
+			if((palette[i] = data.readObject()) == null)
+				throw new IllegalArgumentException("palette contains null");
+		}
+		long end = (long)endRow * width;
+		for(int layer = 0; layer < layers; layer++) {
+			for(long position = (long)startRow * width; position < end;) {
+				long length = readVarLong(data), index = readVarLong(data);
+				if(length <= 0 || length > end - position || index >= palette.length)
+					throw new IllegalArgumentException("invalid run of " + length + " cells of palette entry " + index);
+				if(index != 0) setRun(layer, position, length, palette[(int)index]);
+				position += length;
+			}
 		}
 	}
 
+	/** Sets the cells of a run starting at a position in row order, a chunk at a time **/
+	private void setRun(int layer, long position, long length, Block block) {
+		for(long end = position + length; position < end;) {
+			int x = (int)(position % width), y = (int)(position / width);
+			int count = (int)Math.min(end - position, Math.min(width - x, Chunk.SIZE - (x & Chunk.MASK)));
+			Chunk chunk = chunkForWrite(x, y);
+			for(int column = x & Chunk.MASK, last = column + count; column < last; column++) {
+				chunk.set(layer, column, y & Chunk.MASK, block);
+			}
+			position += count;
+		}
+	}
+
+	private static long readVarLong(TransportableDataReader data) {
+		long value = 0;
+		for(int shift = 0; shift < Long.SIZE; shift += 7) {
+			byte b = data.readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if(b >= 0) return value;
+		}
+		throw new IllegalArgumentException("variable length integer is too long");
+	}
+
+	/** A growable array of runs, each the number of cells followed by the palette entry, as variable length integers **/
+	private static final class Runs {
+		byte[] data = new byte[256];
+		int length;
+
+		void add(long count, int index) {
+			if(data.length - length < 15) data = Arrays.copyOf(data, data.length * 2);
+			put(count);
+			put(index);
+		}
+
+		private void put(long value) {
+			while((value & ~0x7FL) != 0) {
+				data[length++] = (byte)(value | 0x80);
+				value >>>= 7;
+			}
+			data[length++] = (byte)value;
+		}
+	}
+
+	private static void checkSize(int layers, int width, int height) {
+		if(layers <= 0 || width <= 0 || height <= 0)
+			throw new IllegalArgumentException("invalid block grid size " + width + " X " + height + " X " + layers + " layers");
+	}
+
+	private static int chunksCovering(int cells) {
+		return (int)(((long)cells + Chunk.MASK) >> Chunk.SHIFT);
+	}
+
 	@Override
-	public byte[] getBytes(Serializer ser) {
-		//Store all serialized block data
-		byte[][] blockData = new byte[blocks.length][];
-		for(int i = 0; i < blocks.length; i++) {
-			blockData[i] = ser.serialize(blocks[i]);
+	public void write(TransportableDataWriter out) {
+		out.writeInteger(FORMAT_BANDS);
+		out.writeInteger(getWidth());
+		out.writeInteger(getHeight());
+		out.writeInteger(layers);
+		//bands only read the grid, and chunks are loaded while synchronized
+		out.writeSections(chunksHigh, (band, index) -> writeRuns(band, index << Chunk.SHIFT, bandEnd(index)));
+	}
+
+	/** Writes the palette of the blocks in some rows, and then the runs of every layer of the rows **/
+	private void writeRuns(TransportableDataWriter out, int startRow, int endRow) {
+		//palette entries start at 1, 0 is an empty cell
+		Map<Block, Integer> indices = new IdentityHashMap<>();
+		List<Block> palette = new ArrayList<>();
+		Runs runs = new Runs();
+		for(int layer = 0; layer < layers; layer++) {
+			Block previous = null;
+			int current = 0;
+			long length = 0;
+			for(int row = startRow; row < endRow; row++) {
+				for(int column = 0; column < width; column += Chunk.SIZE) {
+					Chunk chunk = chunk(column, row);
+					int end = Math.min(width, column + Chunk.SIZE);
+					if(chunk == null) {
+						if(current != 0) {
+							runs.add(length, current);
+							previous = null;
+							current = 0;
+							length = 0;
+						}
+						length += end - column;
+					} else {
+						for(int x = column; x < end; x++) {
+							Block block = chunk.get(layer, x & Chunk.MASK, row & Chunk.MASK);
+							if(block != previous) {
+								int index = block == null ? 0 : indices.computeIfAbsent(block, b -> {
+									palette.add(b);
+									return palette.size();
+								});
+								previous = block;
+								if(index != current) {
+									if(length > 0) runs.add(length, current);
+									current = index;
+									length = 0;
+								}
+							}
+							length++;
+						}
+					}
+				}
+			}
+			runs.add(length, current);
+		}
+
+		//the palette is written before the runs, so the runs are buffered until every block has been found
+		out.writeInteger(palette.size());
+		for(Block block : palette) {
+			out.writeObject(block);
 		}
-		byte[] data = Bytes.concatenate(12, blockData);
-		Bytes.putInteger(data, 0, getWidth());
-		Bytes.putInteger(data, 4, getHeight());
-		Bytes.putInteger(data, 8, layers);
-		return data;
+		out.writeBytes(runs.data, 0, runs.length);
+	}
+
+	/** @return the journal of changes to the grid, which records changes from the first time it is requested **/
+	public ChangeJournal getJournal() {
+		if(journal == null) journal = new ChangeJournal(JOURNAL_CAPACITY);
+		return journal;
+	}
+
+	/** Sets the listener notified when blocks are changed, replacing the previous listener **/
+	public void setChangeListener(ChangeListener listener) {
+		this.listener = listener;
 	}
 
 	@Override
@@ -59,7 +303,6 @@ public final class BlockGrid implements Transportable {
 				builder.append('│');
 				for(int column = 0; column < width; ++column) {
 					Block block = get(layer, column, row);
-					System.out.println(column + " " + row + " " + compute(layer, column, row));
 					builder.append(block == null ? " " : Character.toUpperCase(block.getName().charAt(0)));
 				}
 				builder.append('│').append('\n');
@@ -77,6 +320,133 @@ public final class BlockGrid implements Transportable {
 		return layer >= 0 && layer < layers && isValid(x, y);
 	}
 
+	/** Chunks in the same column are next to each other, so adding columns doesn't move existing chunks **/
+	private int chunkIndex(int chunkX, int chunkY) {
+		return chunksHigh * chunkX + chunkY;
+	}
+
+	/** @return the index of the chunk containing the cell at x, y **/
+	private int cellChunkIndex(int x, int y) {
+		return chunkIndex(x >> Chunk.SHIFT, y >> Chunk.SHIFT);
+	}
+
+	/** @return the chunk containing the cell at x, y, or null if it is empty **/
+	private Chunk chunk(int x, int y) {
+		return loaded(cellChunkIndex(x, y));
+	}
+
+	/** @return the chunk containing the cell at x, y, allocating it if necessary **/
+	private Chunk chunkForWrite(int x, int y) {
+		int index = cellChunkIndex(x, y);
+		Chunk chunk = unshared(index);
+		if(chunk == null) {
+			chunks[index] = chunk = new Chunk(x >> Chunk.SHIFT, y >> Chunk.SHIFT, layers);
+			shared[index >>> 6] &= ~(1L << index);
+		}
+		return chunk;
+	}
+
+	/** @return the chunk at an index, replaced by a copy first if it has been shared **/
+	private Chunk unshared(int index) {
+		Chunk chunk = loaded(index);
+		if(chunk != null && (shared[index >>> 6] & 1L << index) != 0) {
+			chunks[index] = chunk = chunk.copy();
+			shared[index >>> 6] &= ~(1L << index);
+		}
+		return chunk;
+	}
+
+	private void markDirty(int index) {
+		dirty[index >>> 6] |= 1L << index;
+	}
+
+	/** Releases every allocated chunk that no longer contains any blocks **/
+	public void releaseEmptyChunks() {
+		for(int i = 0; i < chunks.length; i++) {
+			if(chunks[i] != null && chunks[i].isEmpty()) {
+				chunks[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Makes the grid wider, the new cells are empty.
+	 * @param width the new width of the grid, which can't be less than the current width.
+	 */
+	public void extend(int width) {
+		if(width < this.width)
+			throw new IllegalArgumentException("can't shrink block grid from width " + this.width + " to " + width);
+		int chunksWide = chunksCovering(width);
+		int chunkCount = Math.multiplyExact(chunksWide, chunksHigh);
+		if(chunkCount > chunks.length) {
+			int capacity = (int)Math.min(Integer.MAX_VALUE - 8, Math.max(chunkCount, chunks.length * 2L));
+			chunks = Arrays.copyOf(chunks, capacity);
+			dirty = Arrays.copyOf(dirty, (capacity + 63) >>> 6);
+			shared = Arrays.copyOf(shared, dirty.length);
+			unloaded = Arrays.copyOf(unloaded, dirty.length);
+		}
+		this.width = width;
+		this.chunksWide = chunksWide;
+	}
+
+	/**
+	 * Replaces the chunk at the position of {@code chunk} with {@code chunk}, which then belongs to the grid and
+	 * should not be changed directly. Cells of the chunk that are outside the grid are cleared.
+	 * @throws IllegalArgumentException if the chunk is outside the grid or has a different number of layers.
+	 */
+	public void setChunk(Chunk chunk) {
+		if(chunk.getLayers() != layers)
+			throw new IllegalArgumentException("chunk has " + chunk.getLayers() + " layers instead of " + layers);
+		int chunkX = Objects.checkIndex(chunk.getChunkX(), chunksWide);
+		int chunkY = Objects.checkIndex(chunk.getChunkY(), chunksHigh);
+		int left = chunkX << Chunk.SHIFT, bottom = chunkY << Chunk.SHIFT;
+		int columns = Math.min(width - left, Chunk.SIZE), rows = Math.min(height - bottom, Chunk.SIZE);
+		if(columns < Chunk.SIZE) chunk.fill(null, columns, 0, Chunk.SIZE, Chunk.SIZE);
+		if(rows < Chunk.SIZE) chunk.fill(null, 0, rows, columns, Chunk.SIZE);
+		int index = chunkIndex(chunkX, chunkY);
+		chunks[index] = chunk.isEmpty() ? null : chunk;
+		shared[index >>> 6] &= ~(1L << index);
+		unloaded[index >>> 6] &= ~(1L << index);
+		markDirty(index);
+		if(listener != null) listener.onChange(left, bottom, columns, rows);
+		if(journal != null) journal.record(left, bottom, columns, rows);
+	}
+
+	/**
+	 * Copies every layer of a region of {@code source} into this grid. The source can't be this grid.
+	 * @param sourceX the left of the region in {@code source}
+	 * @param sourceY the bottom of the region in {@code source}
+	 * @param x the left of the destination region in this grid
+	 * @param y the bottom of the destination region in this grid
+	 */
+	public void copy(BlockGrid source, int sourceX, int sourceY, int x, int y, int width, int height) {
+		if(source == this)
+			throw new IllegalArgumentException("can't copy a block grid to itself");
+		if(source.layers != layers)
+			throw new IllegalArgumentException("source has " + source.layers + " layers instead of " + layers);
+		if(width <= 0 || height <= 0) return;
+		source.checkValid(0, sourceX, sourceY);
+		source.checkValid(0, sourceX + width - 1, sourceY + height - 1);
+		checkValid(0, x, y);
+		checkValid(0, x + width - 1, y + height - 1);
+		for(int row = 0; row < height; row++) {
+			for(int column = 0; column < width; column++) {
+				int cellX = x + column, cellY = y + row;
+				int index = cellChunkIndex(cellX, cellY);
+				for(int layer = 0; layer < layers; layer++) {
+					Block block = source.getUnchecked(layer, sourceX + column, sourceY + row);
+					Chunk chunk = block == null ? unshared(index) : chunkForWrite(cellX, cellY);
+					if(chunk != null) {
+						chunk.set(layer, cellX & Chunk.MASK, cellY & Chunk.MASK, block);
+						markDirty(index);
+					}
+				}
+			}
+		}
+		if(listener != null) listener.onChange(x, y, width, height);
+		if(journal != null) journal.record(x, y, width, height);
+	}
+
 	/**
 	 * Returns the block at the provided block coordinates
 	 * @param x the distance from the bottom of the world, in blocks
@@ -86,18 +456,13 @@ public final class BlockGrid implements Transportable {
 	 */
 	public Block get(int layer, int x, int y) {
 		checkValid(layer, x, y);
-		try {
-			return blocks[compute(layer, x, y)];
-		} catch(ArrayIndexOutOfBoundsException e) {
-			throw illegal(layer, x, y);
-		}
+		return getUnchecked(layer, x, y);
 	}
 
 	private RuntimeException illegal(int layer, int x, int y) {
 		return new IllegalArgumentException("Invalid coordinates layer "
        + layer + ", pos ("  + x + ", " + y + ") in world sized "
-       + getWidth() + " X " + getHeight() + " X " + layers
-       + " layers, element " + compute(layer, x, y) + "/" + blocks.length);
+       + getWidth() + " X " + getHeight() + " X " + layers + " layers");
 	}
 
 	private int checkLayer(int layer) {
@@ -120,69 +485,44 @@ public final class BlockGrid implements Transportable {
 
 	public Block set(int layer, int x, int y, Block block) {
 		checkValid(layer, x, y);
-		try {
-			int index = compute(layer, x, y);
-			Block previous = blocks[index];
-			blocks[index] = block;
-			return previous;
-		} catch(ArrayIndexOutOfBoundsException e) {
-			throw illegal(layer, x, y);
+		int index = cellChunkIndex(x, y);
+		Chunk chunk = block == null ? unshared(index) : chunkForWrite(x, y);
+		Block previous = null;
+		if(chunk != null) {
+			previous = chunk.set(layer, x & Chunk.MASK, y & Chunk.MASK, block);
+			markDirty(index);
 		}
-	}
-
-	private int firstLayerIndex(int x, int y) {
-		return layers * (width * y + x);
-	}
-
-	/** Determines the memory layout of the block grid dimensions **/
-	private int compute(int layer, int x, int y) {
-		//Want layout to be row -> column ->
-		//return width * layers * y + x * layers;
-		//get start of row: width * layers * y
-		//get offset into a single row: layers * x + layer
-		//combined: (width * layers * y) + (layers * x + layer)
-		//optimized:
-		return firstLayerIndex(x, y) + layer;
+		if(listener != null) listener.onChange(x, y, 1, 1);
+		if(journal != null && previous != block) journal.record(x, y, 1, 1);
+		return previous;
 	}
 
 	/** Fills all layers of a rectangular region with the provided block instance **/
-	@Optimized("compute")
+	@Optimized("set")
 	public void fill(Block block, int x1, int y1, int width, int height) {
-		int y2 = y1 + height;
-		int columnStart = x1 * layers;
-		int columnEnd = (x1 + width) * layers;
-		for(int row = y1; row < y2; ++row) {
-			int rowStart = this.width * layers * row;
-			Arrays.fill(blocks, rowStart + columnStart, rowStart + columnEnd, block);
+		if(width <= 0 || height <= 0) return;
+		checkValid(0, x1, y1);
+		checkValid(0, x1 + width - 1, y1 + height - 1);
+		int x2 = x1 + width, y2 = y1 + height;
+		for(int chunkY = y1 >> Chunk.SHIFT, lastY = (y2 - 1) >> Chunk.SHIFT; chunkY <= lastY; chunkY++) {
+			int bottom = Math.max(y1, chunkY << Chunk.SHIFT), top = Math.min(y2, (chunkY + 1) << Chunk.SHIFT);
+			for(int chunkX = x1 >> Chunk.SHIFT, lastX = (x2 - 1) >> Chunk.SHIFT; chunkX <= lastX; chunkX++) {
+				int left = Math.max(x1, chunkX << Chunk.SHIFT), right = Math.min(x2, (chunkX + 1) << Chunk.SHIFT);
+				int index = chunkIndex(chunkX, chunkY);
+				Chunk chunk = block == null ? unshared(index) : chunkForWrite(left, bottom);
+				if(chunk != null) {
+					chunk.fill(block, left & Chunk.MASK, bottom & Chunk.MASK,
+						((right - 1) & Chunk.MASK) + 1, ((top - 1) & Chunk.MASK) + 1);
+					if(chunk.isEmpty())
+						chunks[index] = null;
+					markDirty(index);
+				}
+			}
 		}
+		if(listener != null) listener.onChange(x1, y1, width, height);
+		if(journal != null) journal.record(x1, y1, width, height);
 	}
 
-//	public Iterator<Block> blockIterator(int layerLast, int layerFirst, int x, int y, int width, int height) {
-//		return new Iterator<Block>() { //TODO test this to see that it works
-//			int current;
-//			final int last;
-//
-//			{
-//
-//				last = (layerLast - layerFirst) * (width * height) - 1;
-//					//compute(layerLast, x + width, y + height);
-//			}
-//
-//			@Override
-//			public boolean hasNext() {
-//				return current < last;
-//			}
-//
-//			@Override
-//			public Block next() {
-//				//current = width * y + x + layer;
-//				//x = current - layer - width * y
-//				throw new UnsupportedOperationException("not implemented");
-//				//return null; //blocks[]; //TODO implement blockIterator
-//			}
-//		};
-//	}
-
 	public boolean place(World world, int layer, float x, float y, Block block) {
 		return place(world, layer, Math.round(x), Math.round(y), block);
 	}
@@ -196,13 +536,14 @@ public final class BlockGrid implements Transportable {
 		return false;
 	}
 
-	@Optimized("compute")
 	public boolean isBlock(int x, int y) {
 		checkValid(0, x, y);
-		int start = firstLayerIndex(x, y);
-		for(int layer = 0; layer < layers; layer++) {
-			if(blocks[start + layer] != null) {
-				return true;
+		Chunk chunk = chunk(x, y);
+		if(chunk != null) {
+			for(int layer = 0; layer < layers; layer++) {
+				if(chunk.isBlock(layer, x & Chunk.MASK, y & Chunk.MASK)) {
+					return true;
+				}
 			}
 		}
 		return false;
@@ -215,7 +556,54 @@ public final class BlockGrid implements Transportable {
 	 * @return whether or not there is a block at the specified block coordinates
 	 */
 	public boolean isBlock(int layer, int x, int y) {
-		return get(layer, x, y) != null;
+		checkValid(layer, x, y);
+		return isBlockUnchecked(layer, x, y);
+	}
+
+	private boolean isBlockUnchecked(int layer, int x, int y) {
+		Chunk chunk = chunk(x, y);
+		return chunk != null && chunk.isBlock(layer, x & Chunk.MASK, y & Chunk.MASK);
+	}
+
+	/**
+	 * @return true if there is a solid block at the specified block coordinates, false if there is not
+	 * or the coordinates are outside of the grid.
+	 */
+	public boolean isSolid(int layer, int x, int y) {
+		if(!isValid(layer, x, y)) return false;
+		Chunk chunk = chunk(x, y);
+		return chunk != null && chunk.isSolid(layer, x & Chunk.MASK, y & Chunk.MASK);
+	}
+
+	/**
+	 * Returns whether each of {@code count} cells in a row, starting at x, y, contains a solid block.
+	 * The caller must ensure the cells are valid.
+	 * @param count the number of cells, at most 64.
+	 * @return a mask with bit {@code i} set if the cell at {@code x + i} is solid.
+	 */
+	@Optimized("isSolid")
+	long solidRow(int layer, int x, int y, int count) {
+		int chunkY = y >> Chunk.SHIFT, chunkRow = y & Chunk.MASK;
+		long row = 0;
+		for(int found = 0; found < count;) {
+			int column = x + found;
+			int offset = column & Chunk.MASK;
+			int cells = Math.min(Chunk.SIZE - offset, count - found);
+			int index = chunkIndex(column >> Chunk.SHIFT, chunkY);
+			Chunk chunk = loaded(index);
+			if(chunk != null) {
+				long bits = Integer.toUnsignedLong(chunk.solidRow(layer, chunkRow)) >>> offset;
+				row |= (bits & ((1L << cells) - 1)) << found;
+			}
+			found += cells;
+		}
+		return row;
+	}
+
+	/** Same as {@link #get(int, int, int)}, but the caller must ensure the coordinates are valid **/
+	Block getUnchecked(int layer, int x, int y) {
+		Chunk chunk = chunk(x, y);
+		return chunk == null ? null : chunk.get(layer, x & Chunk.MASK, y & Chunk.MASK);
 	}
 
 	/** Returns whether or not there is a block at the specified world coordinates
@@ -226,37 +614,190 @@ public final class BlockGrid implements Transportable {
 		return isBlock(layer, Math.round(worldX), Math.round(worldY));
 	}
 
-	@Optimized("compute")
 	public boolean isBlockInLayers(int layerStart, int layerEnd, int x, int y) {
 		checkValid(layerStart, x, y);
-		int base = firstLayerIndex(x, y);
-		int end = base + checkLayer(layerEnd);
-		for(int index = base + layerStart; index <= end; index++) {
-			if(blocks[index] != null) {
+		checkLayer(layerEnd);
+		for(int layer = layerStart; layer <= layerEnd; layer++) {
+			if(isBlockUnchecked(layer, x, y)) {
 				return true;
 			}
 		}
 		return false;
 	}
 
-	@Optimized("compute")
 	public int getTopBlockLayer(int x, int y) {
 		checkValid(0, x, y);
-		int start = firstLayerIndex(x, y);
-		int end = start + layers;
-		for(int index = start; index < end; index++) {
-			if(blocks[index] != null) {
-				return index - start;
+		Chunk chunk = chunk(x, y);
+		if(chunk != null) {
+			for(int layer = 0; layer < layers; layer++) {
+				if(chunk.isBlock(layer, x & Chunk.MASK, y & Chunk.MASK)) {
+					return layer;
+				}
 			}
 		}
 		return INVALID_LAYER;
 	}
 
 	public boolean isSolidBlockAdjacent(int layer, int blockX, int blockY) {
-		return 	(isValid(layer, blockX + 1, blockY) && blocks[compute(layer, blockX + 1, blockY)] != null) ||
-				(isValid(layer, blockX - 1, blockY) && blocks[compute(layer, blockX - 1, blockY)] != null) ||
-				(isValid(layer, blockX, blockY + 1) && blocks[compute(layer, blockX, blockY + 1)] != null) ||
-				(isValid(layer, blockX, blockY - 1) && blocks[compute(layer, blockX, blockY - 1)] != null);
+		if(layer < 0 || layer >= layers) return false;
+		return 	(isValid(blockX + 1, blockY) && isBlockUnchecked(layer, blockX + 1, blockY)) ||
+				(isValid(blockX - 1, blockY) && isBlockUnchecked(layer, blockX - 1, blockY)) ||
+				(isValid(blockX, blockY + 1) && isBlockUnchecked(layer, blockX, blockY + 1)) ||
+				(isValid(blockX, blockY - 1) && isBlockUnchecked(layer, blockX, blockY - 1));
+	}
+
+	/** @return the number of chunks in each row of chunks **/
+	public int getChunksWide() {
+		return chunksWide;
+	}
+
+	/** @return the number of chunks in each column of chunks **/
+	public int getChunksHigh() {
+		return chunksHigh;
+	}
+
+	/**
+	 * @param chunkX the horizontal position of the chunk, in chunks
+	 * @param chunkY the vertical position of the chunk, in chunks
+	 * @return the chunk, or null if it has not been allocated, in which case it contains no blocks
+	 */
+	public Chunk getChunk(int chunkX, int chunkY) {
+		Objects.checkIndex(chunkX, chunksWide);
+		int index = chunkIndex(chunkX, Objects.checkIndex(chunkY, chunksHigh));
+		return loaded(index);
+	}
+
+	/** Sets the source of unloaded chunks, which is required to unload chunks **/
+	public void setChunkSource(ChunkSource source) {
+		this.source = source;
+	}
+
+	/**
+	 * Releases a chunk that has been saved, so that it no longer uses memory. The chunk is loaded from the
+	 * grid's {@link ChunkSource} the next time it is accessed, which must return the same blocks. If the source is a
+	 * {@link ChunkStore}, the chunk is stored first and can be unloaded even if it has changed, and stays dirty.
+	 * @throws IllegalStateException if the chunk has changed since it was marked clean and the source isn't a
+	 * {@link ChunkStore}, or the grid has no source.
+	 */
+	public synchronized void unload(int chunkX, int chunkY) {
+		Objects.checkIndex(chunkX, chunksWide);
+		int index = chunkIndex(chunkX, Objects.checkIndex(chunkY, chunksHigh));
+		if(source == null)
+			throw new IllegalStateException("can't unload chunks without a chunk source");
+		if((unloaded[index >>> 6] & 1L << index) != 0)
+			return;
+		if(source instanceof ChunkStore store) {
+			store.store(chunkX, chunkY, chunks[index]);
+		} else if((dirty[index >>> 6] & 1L << index) != 0) {
+			throw new IllegalStateException("chunk " + chunkX + ", " + chunkY + " hasn't been saved");
+		}
+		//the bit is set before the chunk is cleared, so a reader that sees no chunk sees that it must be loaded
+		shared[index >>> 6] &= ~(1L << index);
+		BITS.setRelease(unloaded, index >>> 6, unloaded[index >>> 6] | 1L << index);
+		CHUNKS.setRelease(chunks, index, null);
+	}
+
+	/** @return false if the chunk has been unloaded and hasn't been accessed since **/
+	public boolean isLoaded(int chunkX, int chunkY) {
+		Objects.checkIndex(chunkX, chunksWide);
+		int index = chunkIndex(chunkX, Objects.checkIndex(chunkY, chunksHigh));
+		return (unloaded[index >>> 6] & 1L << index) == 0;
+	}
+
+	/**
+	 * @return the chunk at an index, which is loaded first if it has been unloaded. A chunk loaded by another thread
+	 * is published before its unloaded bit is cleared, so if the chunk isn't seen the first time it is read, it is
+	 * seen once the bit is clear.
+	 */
+	private Chunk loaded(int index) {
+		Chunk chunk = (Chunk)CHUNKS.getAcquire(chunks, index);
+		if(chunk != null) return chunk;
+		return ((long)BITS.getAcquire(unloaded, index >>> 6) & 1L << index) != 0 ? load(index) : (Chunk)CHUNKS.getAcquire(chunks, index);
+	}
+
+	/** Loads an unloaded chunk, synchronized in case the chunk is accessed by a parallel world update **/
+	private synchronized Chunk load(int index) {
+		if((unloaded[index >>> 6] & 1L << index) == 0)
+			return chunks[index];
+		int chunkX = index / chunksHigh, chunkY = index % chunksHigh;
+		Chunk chunk = source.load(chunkX, chunkY);
+		if(chunk != null && (chunk.getChunkX() != chunkX || chunk.getChunkY() != chunkY || chunk.getLayers() != layers))
+			throw new IllegalStateException("loaded chunk " + chunk.getChunkX() + ", " + chunk.getChunkY()
+				+ " with " + chunk.getLayers() + " layers in place of chunk " + chunkX + ", " + chunkY);
+		chunk = chunk == null || chunk.isEmpty() ? null : chunk;
+		CHUNKS.setRelease(chunks, index, chunk);
+		BITS.setRelease(unloaded, index >>> 6, unloaded[index >>> 6] & ~(1L << index));
+		return chunk;
+	}
+
+	/**
+	 * Returns a chunk that won't be changed by the grid, so it can be read by another thread. Instead of changing the
+	 * chunk, the grid replaces it with a copy the next time one of its blocks is changed, so sharing a chunk is free
+	 * unless the chunk changes again.
+	 * @return the chunk, or null if it has not been allocated
+	 */
+	public Chunk share(int chunkX, int chunkY) {
+		Chunk chunk = getChunk(chunkX, chunkY);
+		int index = chunkIndex(chunkX, chunkY);
+		shared[index >>> 6] |= 1L << index;
+		return chunk;
+	}
+
+	/** @return the number of allocated chunks that are loaded **/
+	public int getChunkCount() {
+		int count = 0;
+		for(Chunk chunk : chunks) {
+			if(chunk != null) count++;
+		}
+		return count;
+	}
+
+	/** @return true if the chunk has been changed since it was last marked clean **/
+	public boolean isDirty(int chunkX, int chunkY) {
+		Objects.checkIndex(chunkX, chunksWide);
+		int index = chunkIndex(chunkX, Objects.checkIndex(chunkY, chunksHigh));
+		return (dirty[index >>> 6] & 1L << index) != 0;
+	}
+
+	/** Marks a single chunk as unchanged **/
+	public void clearDirty(int chunkX, int chunkY) {
+		Objects.checkIndex(chunkX, chunksWide);
+		int index = chunkIndex(chunkX, Objects.checkIndex(chunkY, chunksHigh));
+		dirty[index >>> 6] &= ~(1L << index);
+	}
+
+	/** Marks every chunk as unchanged **/
+	public void clearDirty() {
+		Arrays.fill(dirty, 0);
+	}
+
+	/** Iterates over the allocated chunks that are loaded, from bottom to top and then left to right **/
+	@Override
+	public Iterator<Chunk> iterator() {
+		return new Iterator<>() {
+			private int index = next(0);
+
+			private int next(int from) {
+				while(from < chunks.length && chunks[from] == null) {
+					from++;
+				}
+				return from;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return index < chunks.length;
+			}
+
+			@Override
+			public Chunk next() {
+				if(index >= chunks.length)
+					throw new NoSuchElementException();
+				Chunk chunk = chunks[index];
+				index = next(index + 1);
+				return chunk;
+			}
+		};
 	}
 
 	public int getWidth() {
@@ -0,0 +1,183 @@
+package ritzow.sandbox.world;
+
+import java.util.Arrays;
+import ritzow.sandbox.world.BlockGrid.ChangeListener;
+
+/**
+ * A bounded log of the regions of a {@link BlockGrid} that have changed, read independently by any number of
+ * {@link Cursor cursors}. Every change is given the next sequence number and stored in a ring buffer, so the journal
+ * never uses more memory than its capacity no matter how far behind a cursor falls. A cursor that falls more than
+ * the capacity behind is told that changes were lost, and must treat the whole grid as changed. Changing a single
+ * cell that already has an unread change removes the older change, so a cursor only reads the latest change of each
+ * cell. The journal records where blocks changed, and readers get the current blocks from the grid.
+ * @author Solomon Ritzow
+ */
+public final class ChangeJournal {
+	private static final long EMPTY = -1;
+
+	/** Change positions packed as {@code x << 32 | y} and sizes packed as {@code width << 32 | height}, by sequence **/
+	private final long[] positions, sizes;
+	private final int mask;
+	/** The sequence number of the next change **/
+	private long next;
+
+	/** Open addressing table from the packed position of a changed cell to the sequence of its latest change **/
+	private final long[] cellKeys, cellSequences;
+	private int cellsUsed;
+
+	/** @param capacity the number of changes kept for cursors that haven't read them, rounded up to a power of two **/
+	public ChangeJournal(int capacity) {
+		if(capacity <= 0 || capacity > 1 << 28)
+			throw new IllegalArgumentException("invalid capacity " + capacity);
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		size = Math.max(size, 1);
+		this.positions = new long[size];
+		this.sizes = new long[size];
+		this.mask = size - 1;
+		this.cellKeys = new long[size * 2];
+		this.cellSequences = new long[size * 2];
+		Arrays.fill(cellKeys, EMPTY);
+	}
+
+	/** Reads changes from a journal in order, starting with the first change recorded after it was created **/
+	public final class Cursor {
+		private long position;
+
+		private Cursor() {
+			this.position = next;
+		}
+
+		/**
+		 * Passes every change since the last call to {@code action}, oldest first. Changes made by {@code action}
+		 * are read by the next call.
+		 * @return false if changes were lost because the cursor fell more than the capacity of the journal behind,
+		 * in which case the changes still in the journal are passed to {@code action} but the whole grid should be
+		 * treated as changed.
+		 */
+		public boolean drain(ChangeListener action) {
+			long oldest = oldest(), end = next;
+			boolean complete = position >= oldest;
+			for(long sequence = Math.max(position, oldest); sequence < end; sequence++) {
+				int slot = (int)sequence & mask;
+				long size = sizes[slot];
+				if(size != 0) {
+					long pos = positions[slot];
+					action.onChange((int)(pos >>> 32), (int)pos, (int)(size >>> 32), (int)size);
+				}
+			}
+			position = end;
+			return complete;
+		}
+
+		/** Marks every change as read, for example after the reader has rebuilt its state from the whole grid **/
+		public void skip() {
+			position = next;
+		}
+
+		/** @return true if changes have been made since the last call to {@link #drain} or {@link #skip} **/
+		public boolean hasChanges() {
+			return position < next;
+		}
+
+		/** @return the sequence number of the next change this cursor will read **/
+		public long getSequence() {
+			return position;
+		}
+	}
+
+	/** @return a new cursor that reads the changes recorded from now on **/
+	public Cursor subscribe() {
+		return new Cursor();
+	}
+
+	/** @return the sequence number that will be given to the next change **/
+	public long getSequence() {
+		return next;
+	}
+
+	/** @return the maximum number of changes kept for cursors **/
+	public int getCapacity() {
+		return positions.length;
+	}
+
+	private long oldest() {
+		return Math.max(0, next - positions.length);
+	}
+
+	/** Records a change to a rectangle of cells, with x and y at the bottom left, coordinates can't be negative **/
+	void record(int x, int y, int width, int height) {
+		long position = (long)x << 32 | Integer.toUnsignedLong(y);
+		if(width == 1 && height == 1) {
+			coalesce(position, next);
+		}
+		int slot = (int)next & mask;
+		positions[slot] = position;
+		sizes[slot] = (long)width << 32 | height;
+		next++;
+	}
+
+	/** Removes the previous change of a cell if it is still in the journal, and stores the sequence of its new change **/
+	private void coalesce(long position, long sequence) {
+		//rebuilt before inserting so that the new entry is never dropped by the rebuild
+		if(cellsUsed >= cellKeys.length * 3 / 4) {
+			rebuildCells(sequence);
+		}
+		long oldest = oldest();
+		int tableMask = cellKeys.length - 1;
+		int reusable = -1;
+		for(int i = hash(position) & tableMask;; i = (i + 1) & tableMask) {
+			long key = cellKeys[i];
+			if(key == position) {
+				long previous = cellSequences[i];
+				if(previous >= oldest) {
+					sizes[(int)previous & mask] = 0;
+				}
+				cellSequences[i] = sequence;
+				return;
+			} else if(key == EMPTY) {
+				if(reusable < 0) {
+					reusable = i;
+					cellsUsed++;
+				}
+				break;
+			} else if(reusable < 0 && cellSequences[i] < oldest) {
+				//the change has been overwritten, so the entry can be reused by any cell
+				reusable = i;
+			}
+		}
+		cellKeys[reusable] = position;
+		cellSequences[reusable] = sequence;
+	}
+
+	/**
+	 * Removes the entries of cells whose latest change is no longer in the journal, including the change that
+	 * will be overwritten by the change with sequence {@code end}.
+	 */
+	private void rebuildCells(long end) {
+		Arrays.fill(cellKeys, EMPTY);
+		cellsUsed = 0;
+		int tableMask = cellKeys.length - 1;
+		for(long sequence = Math.max(0, end + 1 - positions.length); sequence < end; sequence++) {
+			int slot = (int)sequence & mask;
+			if(sizes[slot] == ((long)1 << 32 | 1)) {
+				int i = hash(positions[slot]) & tableMask;
+				while(cellKeys[i] != EMPTY) {
+					i = (i + 1) & tableMask;
+				}
+				cellKeys[i] = positions[slot];
+				cellSequences[i] = sequence;
+				cellsUsed++;
+			}
+		}
+	}
+
+	private static int hash(long position) {
+		long hash = position * 0x9E3779B97F4A7C15L;
+		return (int)(hash >>> 32);
+	}
+
+	@Override
+	public String toString() {
+		return "ChangeJournal[sequence " + next + ", capacity " + positions.length + "]";
+	}
+}
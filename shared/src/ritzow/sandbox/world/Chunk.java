@@ -0,0 +1,314 @@
+package ritzow.sandbox.world;
+
+import java.util.Arrays;
+import java.util.Objects;
+import ritzow.sandbox.data.Transportable;
+import ritzow.sandbox.data.TransportableDataReader;
+import ritzow.sandbox.data.TransportableDataWriter;
+import ritzow.sandbox.world.block.Block;
+
+/**
+ * A square region of {@link #SIZE} by {@link #SIZE} cells of a {@link BlockGrid}, with every layer of each
+ * cell stored next to each other. Cells don't reference blocks directly, instead each cell stores a small index
+ * into the chunk's palette of blocks, packed into longs using 1, 2, 4, 8, or 16 bits per cell. Index 0 is
+ * always null, and the number of bits grows when the palette runs out of indices, so a chunk containing only
+ * dirt and grass uses 2 bits per cell. Along with the blocks, each chunk keeps one bit per cell for each layer
+ * recording whether the cell contains a block and whether that block is solid, with one int per row.
+ * A grid only allocates a chunk once a block is placed in it. Chunks can also be created and filled on their own,
+ * for example by a {@link ritzow.sandbox.world.generator.ChunkGenerator} on another thread, and then added to a grid
+ * with {@link BlockGrid#setChunk(Chunk)}. Chunks that belong to a grid should only be changed through the grid.
+ * @author Solomon Ritzow
+ */
+public final class Chunk implements Transportable {
+	/** The width and height of a chunk in cells, and its base 2 logarithm **/
+	public static final int SIZE = 32, SHIFT = 5;
+	static final int MASK = SIZE - 1;
+
+	/** The base 2 logarithm of the largest number of bits used for each cell **/
+	private static final int MAX_BITS_SHIFT = 4;
+
+	private final int chunkX, chunkY, layers;
+
+	/** Palette indices of every cell, the base 2 logarithm of the bits used by each index **/
+	private long[] cells;
+	private int bitsShift;
+
+	/** Blocks referenced by cells and the number of cells referencing each, entries with no cells can be reused **/
+	private Block[] palette;
+	private int[] paletteCounts;
+	private int paletteSize;
+
+	/**
+	 * Rows of occupied bits at {@code 2 * (layer * SIZE + y)}, each followed by the row of solid bits,
+	 * with bit x set for each cell. Both rows of a cell are usually in the same cache line.
+	 */
+	private final int[] bits;
+	private int blockCount;
+
+	/**
+	 * Creates an empty chunk.
+	 * @param chunkX the horizontal position of the chunk, in chunks
+	 * @param chunkY the vertical position of the chunk, in chunks
+	 * @param layers the number of layers, which must be the same as the grid the chunk is added to
+	 */
+	public Chunk(int chunkX, int chunkY, int layers) {
+		if(layers <= 0)
+			throw new IllegalArgumentException("invalid layer count " + layers);
+		this.chunkX = chunkX;
+		this.chunkY = chunkY;
+		this.layers = layers;
+		this.bits = new int[layers * SIZE * 2];
+		this.cells = new long[layers * SIZE * SIZE >> 6];
+		this.palette = new Block[2];
+		this.paletteCounts = new int[2];
+		this.paletteSize = 1;
+	}
+
+	private Chunk(Chunk chunk) {
+		this.chunkX = chunk.chunkX;
+		this.chunkY = chunk.chunkY;
+		this.layers = chunk.layers;
+		this.cells = chunk.cells.clone();
+		this.bitsShift = chunk.bitsShift;
+		this.palette = chunk.palette.clone();
+		this.paletteCounts = chunk.paletteCounts.clone();
+		this.paletteSize = chunk.paletteSize;
+		this.bits = chunk.bits.clone();
+		this.blockCount = chunk.blockCount;
+	}
+
+	/** @return a chunk with the same position and blocks that can be changed independently **/
+	Chunk copy() {
+		return new Chunk(this);
+	}
+
+	/** Reads a chunk written by {@link #write(TransportableDataWriter)}, which stores the palette and packed cells as they are **/
+	public Chunk(TransportableDataReader data) {
+		this(data.readInteger(), data.readInteger(), data.readInteger());
+		int shift = data.readByte();
+		if(shift < 0 || shift > MAX_BITS_SHIFT)
+			throw new IllegalArgumentException("invalid bits per cell shift " + shift);
+		int size = data.readInteger();
+		if(size < 1 || size > 1 << (1 << shift))
+			throw new IllegalArgumentException("invalid palette size " + size);
+		bitsShift = shift;
+		paletteSize = size;
+		palette = new Block[size];
+		paletteCounts = new int[size];
+		for(int i = 1; i < size; i++) {
+			palette[i] = data.readObject();
+		}
+		cells = new long[cells.length << shift];
+		data.readLongs(cells, 0, cells.length);
+		for(int y = 0, cell = 0; y < SIZE; y++) {
+			for(int x = 0; x < SIZE; x++) {
+				for(int layer = 0; layer < layers; layer++, cell++) {
+					int value = read(cell);
+					if(value != 0) {
+						Block block = value < size ? palette[value] : null;
+						if(block == null)
+							throw new IllegalArgumentException("cell refers to missing palette entry " + value);
+						paletteCounts[value]++;
+						blockCount++;
+						int row = 2 * (layer * SIZE + y);
+						bits[row] |= 1 << x;
+						if(block.isSolid()) bits[row + 1] |= 1 << x;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void write(TransportableDataWriter out) {
+		out.writeInteger(chunkX);
+		out.writeInteger(chunkY);
+		out.writeInteger(layers);
+		out.writeByte((byte)bitsShift);
+		out.writeInteger(paletteSize);
+		for(int i = 1; i < paletteSize; i++) {
+			//unused entries are written as null
+			out.writeObject(paletteCounts[i] == 0 ? null : palette[i]);
+		}
+		for(long cell : cells) {
+			out.writeLong(cell);
+		}
+	}
+
+	/** @return the horizontal position of the chunk in chunks, multiply by {@link #SIZE} for blocks **/
+	public int getChunkX() {
+		return chunkX;
+	}
+
+	/** @return the vertical position of the chunk in chunks, multiply by {@link #SIZE} for blocks **/
+	public int getChunkY() {
+		return chunkY;
+	}
+
+	public int getLayers() {
+		return layers;
+	}
+
+	/** @return the number of non-null blocks in every layer of the chunk **/
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	public boolean isEmpty() {
+		return blockCount == 0;
+	}
+
+	/** @return the number of bits used to store each cell **/
+	public int getBitsPerCell() {
+		return 1 << bitsShift;
+	}
+
+	/** @return an estimate of the bytes of heap used by the chunk, assuming compressed references **/
+	public int getMemoryUsage() {
+		//object headers and fields, then the arrays with 16 byte headers
+		return 48 + 16 + cells.length * Long.BYTES + 16 + palette.length * 4
+			+ 16 + paletteCounts.length * Integer.BYTES + 16 + bits.length * Integer.BYTES;
+	}
+
+	/** Layers of a cell are adjacent in memory, then cells in a row, then rows **/
+	private int index(int layer, int x, int y) {
+		return (SIZE * y + x) * layers + layer;
+	}
+
+	private int read(int index) {
+		int shift = bitsShift;
+		return (int)(cells[index >>> (6 - shift)] >>> (index << shift)) & ((1 << (1 << shift)) - 1);
+	}
+
+	private void write(int index, int value) {
+		int shift = bitsShift;
+		int word = index >>> (6 - shift), offset = (index << shift) & 63;
+		long mask = ((1L << (1 << shift)) - 1) << offset;
+		cells[word] = cells[word] & ~mask | (long)value << offset;
+	}
+
+	/**
+	 * @param x the horizontal position of the cell relative to the left of the chunk
+	 * @param y the vertical position of the cell relative to the bottom of the chunk
+	 * @return the block in the cell, or null
+	 */
+	public Block get(int layer, int x, int y) {
+		return palette[read(index(layer, x, y))];
+	}
+
+	/** @return the palette index of {@code block}, adding it to the palette if it isn't already there **/
+	private int paletteIndex(Block block) {
+		if(block == null)
+			return 0;
+		int free = -1;
+		for(int i = 1; i < paletteSize; i++) {
+			if(paletteCounts[i] == 0) {
+				if(free < 0) free = i;
+			} else if(palette[i] == block) {
+				return i;
+			}
+		}
+		if(free < 0) {
+			free = paletteSize++;
+			if(free == palette.length) {
+				palette = Arrays.copyOf(palette, free * 2);
+				paletteCounts = Arrays.copyOf(paletteCounts, free * 2);
+			}
+			if(free >= 1 << (1 << bitsShift)) {
+				widen();
+			}
+		}
+		palette[free] = block;
+		return free;
+	}
+
+	/** Doubles the number of bits used by each cell **/
+	private void widen() {
+		if(bitsShift == MAX_BITS_SHIFT)
+			throw new IllegalStateException("chunk contains more than " + (1 << (1 << MAX_BITS_SHIFT)) + " kinds of blocks");
+		long[] previous = cells;
+		int previousShift = bitsShift;
+		cells = new long[previous.length * 2];
+		bitsShift++;
+		int count = layers * SIZE * SIZE, mask = (1 << (1 << previousShift)) - 1;
+		for(int i = 0; i < count; i++) {
+			write(i, (int)(previous[i >>> (6 - previousShift)] >>> (i << previousShift)) & mask);
+		}
+	}
+
+	/** Decrements the number of cells using a palette entry, releasing the block when it is no longer used **/
+	private void release(int index) {
+		if(index != 0 && --paletteCounts[index] == 0) {
+			palette[index] = null;
+		}
+	}
+
+	/** Sets the block in a cell, with the same coordinates as {@link #get(int, int, int)} **/
+	public Block set(int layer, int x, int y, Block block) {
+		int cell = index(layer, x, y);
+		int previous = read(cell);
+		Block previousBlock = palette[previous];
+		if(previousBlock != block) {
+			int value = paletteIndex(block);
+			write(cell, value);
+			if(value != 0) paletteCounts[value]++;
+			release(previous);
+			blockCount += (block != null ? 1 : 0) - (previousBlock != null ? 1 : 0);
+		}
+		int row = 2 * (layer * SIZE + y), bit = 1 << x;
+		bits[row] = block != null ? bits[row] | bit : bits[row] & ~bit;
+		bits[row + 1] = block != null && block.isSolid() ? bits[row + 1] | bit : bits[row + 1] & ~bit;
+		return previousBlock;
+	}
+
+	/** Sets every layer of the cells from x1, y1 (inclusive) to x2, y2 (exclusive) to {@code block} **/
+	public void fill(Block block, int x1, int y1, int x2, int y2) {
+		Objects.checkFromToIndex(x1, x2, SIZE);
+		Objects.checkFromToIndex(y1, y2, SIZE);
+		int value = paletteIndex(block);
+		int filled = 0;
+		for(int y = y1; y < y2; y++) {
+			for(int cell = index(0, x1, y), end = index(0, x2, y); cell < end; cell++) {
+				int previous = read(cell);
+				if(previous != value) {
+					if(previous != 0) blockCount--;
+					release(previous);
+					write(cell, value);
+					filled++;
+				}
+			}
+		}
+		if(value != 0) {
+			paletteCounts[value] += filled;
+			blockCount += filled;
+		}
+
+		int mask = (int)(-1L << x1 & (1L << x2) - 1);
+		int occupiedBits = block != null ? mask : 0, solidBits = block != null && block.isSolid() ? mask : 0;
+		for(int y = y1; y < y2; y++) {
+			for(int layer = 0; layer < layers; layer++) {
+				int row = 2 * (layer * SIZE + y);
+				bits[row] = bits[row] & ~mask | occupiedBits;
+				bits[row + 1] = bits[row + 1] & ~mask | solidBits;
+			}
+		}
+	}
+
+	boolean isBlock(int layer, int x, int y) {
+		return (bits[2 * (layer * SIZE + y)] & 1 << x) != 0;
+	}
+
+	boolean isSolid(int layer, int x, int y) {
+		return (bits[2 * (layer * SIZE + y) + 1] & 1 << x) != 0;
+	}
+
+	/** @return the solid bits of a row of the chunk, bit x set if the block at x is solid **/
+	int solidRow(int layer, int y) {
+		return bits[2 * (layer * SIZE + y) + 1];
+	}
+
+	@Override
+	public String toString() {
+		return "Chunk[" + chunkX + ", " + chunkY + ", " + blockCount + " blocks, " + getBitsPerCell() + " bits per cell]";
+	}
+}
@@ -0,0 +1,179 @@
+package ritzow.sandbox.world;
+
+import java.util.Arrays;
+import ritzow.sandbox.world.entity.Entity;
+
+/**
+ * Finds every pair of entities with overlapping bounds where at least one of the two interacts with entities.
+ * The world is split into vertical bands and the pairs in each band are found independently by sweeping along
+ * the x axis, so different bands can be searched by different threads. A pair of entities that are both in
+ * several bands is only reported by the band containing the left edge of their overlap, and the merged pairs
+ * are sorted by entity index, so the result is the same for any number of bands.
+ * @author Solomon Ritzow
+ */
+final class CollisionPairs {
+	/** Entity bounds and flags by index in the world's entity list **/
+	private float[] left, bottom, right, top;
+	private boolean[] interacts;
+	private int size;
+
+	private float origin, bandWidth;
+	private int bandCount;
+	private int[][] members;
+	private int[] memberCounts;
+	private long[][] bandKeys, bandPairs;
+	private int[] bandPairCounts;
+
+	/** Pairs of entity indices, the first index in the high 32 bits, sorted **/
+	private long[] pairs;
+	private int pairCount;
+
+	CollisionPairs() {
+		reset(0);
+		members = new int[0][];
+		memberCounts = new int[0];
+		bandKeys = new long[0][];
+		bandPairs = new long[0][];
+		bandPairCounts = new int[0];
+		pairs = new long[16];
+	}
+
+	/** Prepares to search {@code size} entities, whose bounds must then be provided with {@link #setBounds(int, Entity)} **/
+	void reset(int size) {
+		if(left == null || left.length < size) {
+			int capacity = Math.max(size, 16);
+			left = new float[capacity];
+			bottom = new float[capacity];
+			right = new float[capacity];
+			top = new float[capacity];
+			interacts = new boolean[capacity];
+		}
+		this.size = size;
+	}
+
+	/** Records the bounds of the entity at {@code index}, bounds for different indices can be set concurrently **/
+	void setBounds(int index, Entity e) {
+		float halfWidth = e.getWidth() * 0.5f, halfHeight = e.getHeight() * 0.5f;
+		left[index] = e.getPositionX() - halfWidth;
+		right[index] = e.getPositionX() + halfWidth;
+		bottom[index] = e.getPositionY() - halfHeight;
+		top[index] = e.getPositionY() + halfHeight;
+		interacts[index] = e.interactsWithEntities();
+	}
+
+	/**
+	 * Splits the entities into at most {@code bands} bands of equal width.
+	 * @return the number of bands to search with {@link #find(int)}.
+	 */
+	int partition(int bands) {
+		float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+		for(int i = 0; i < size; i++) {
+			min = Math.min(min, left[i]);
+			max = Math.max(max, right[i]);
+		}
+		origin = min;
+		bandWidth = (max - min) / bands;
+		bandCount = size == 0 ? 0 : bandWidth > 0 && bandWidth < Float.POSITIVE_INFINITY ? bands : 1;
+
+		if(members.length < bandCount) {
+			members = Arrays.copyOf(members, bandCount);
+			memberCounts = new int[bandCount];
+			bandKeys = Arrays.copyOf(bandKeys, bandCount);
+			bandPairs = Arrays.copyOf(bandPairs, bandCount);
+			bandPairCounts = new int[bandCount];
+		} else {
+			Arrays.fill(memberCounts, 0);
+		}
+
+		for(int i = 0; i < size; i++) {
+			for(int band = band(left[i]), last = band(right[i]); band <= last; band++) {
+				int[] contents = members[band];
+				int count = memberCounts[band];
+				if(contents == null) {
+					members[band] = contents = new int[16];
+				} else if(count == contents.length) {
+					members[band] = contents = Arrays.copyOf(contents, count * 2);
+				}
+				contents[count] = i;
+				memberCounts[band] = count + 1;
+			}
+		}
+		return bandCount;
+	}
+
+	private int band(float x) {
+		return bandCount == 1 ? 0 : Math.max(0, Math.min(bandCount - 1, (int)((x - origin) / bandWidth)));
+	}
+
+	/** Finds the pairs owned by a single band, different bands can be searched concurrently **/
+	void find(int band) {
+		int[] contents = members[band];
+		int count = memberCounts[band];
+		long[] keys = bandKeys[band];
+		if(keys == null || keys.length < count) {
+			bandKeys[band] = keys = new long[Math.max(count, 16)];
+		}
+		for(int k = 0; k < count; k++) {
+			int index = contents[k];
+			keys[k] = (long)sortable(left[index]) << 32 | index;
+		}
+		Arrays.sort(keys, 0, count);
+
+		long[] found = bandPairs[band];
+		if(found == null) found = new long[16];
+		int foundCount = 0;
+		for(int a = 0; a < count; a++) {
+			int i = (int)keys[a];
+			for(int b = a + 1; b < count; b++) {
+				int j = (int)keys[b];
+				if(left[j] > right[i])
+					break; //no remaining entity in the band starts before i ends
+				if((interacts[i] || interacts[j]) && bottom[j] <= top[i] && bottom[i] <= top[j] && band(left[j]) == band) {
+					if(foundCount == found.length)
+						found = Arrays.copyOf(found, foundCount * 2);
+					found[foundCount++] = i < j ? (long)i << 32 | j : (long)j << 32 | i;
+				}
+			}
+		}
+		bandPairs[band] = found;
+		bandPairCounts[band] = foundCount;
+	}
+
+	/** Maps a float to an int with the same ordering **/
+	private static int sortable(float value) {
+		int bits = Float.floatToIntBits(value);
+		return bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+	}
+
+	/** Combines the pairs found in each band, ordered by the index of the first and then second entity **/
+	void merge() {
+		int total = 0;
+		for(int band = 0; band < bandCount; band++) {
+			total += bandPairCounts[band];
+		}
+		if(pairs.length < total) {
+			pairs = new long[Math.max(total, pairs.length * 2)];
+		}
+		int index = 0;
+		for(int band = 0; band < bandCount; band++) {
+			System.arraycopy(bandPairs[band], 0, pairs, index, bandPairCounts[band]);
+			index += bandPairCounts[band];
+		}
+		Arrays.sort(pairs, 0, total);
+		pairCount = total;
+	}
+
+	int count() {
+		return pairCount;
+	}
+
+	/** @return the index of the entity that comes first in the entity list of pair {@code pair} **/
+	int first(int pair) {
+		return (int)(pairs[pair] >>> 32);
+	}
+
+	/** @return the index of the entity that comes later in the entity list of pair {@code pair} **/
+	int second(int pair) {
+		return (int)pairs[pair];
+	}
+}
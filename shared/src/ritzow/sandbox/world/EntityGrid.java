@@ -0,0 +1,250 @@
+package ritzow.sandbox.world;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import ritzow.sandbox.world.entity.Entity;
+
+/**
+ * A uniform spatial hash of entity bounding boxes used as the broad phase of entity collision detection.
+ * Each entity is inserted into every cell its bounding box overlaps, so any two entities whose bounding
+ * boxes intersect are guaranteed to share at least one cell. Distinct cells may hash to the same bucket,
+ * so query results are candidates that still need an exact intersection test. Entries can either be
+ * inserted into a grid that is reset every update, or be tracked and moved between cells incrementally as
+ * their entities move. Queries don't modify the grid, so a grid can be queried by multiple threads at once
+ * as long as each has its own {@link Results} and the grid isn't modified.
+ * @author Solomon Ritzow
+ */
+final class EntityGrid {
+	/** The width and height of a single grid cell in world units (blocks) **/
+	static final float CELL_SIZE = 2f;
+
+	private static final int INITIAL_BUCKET_CAPACITY = 4;
+	private static final Comparator<Entry> ORDER = Comparator.comparingInt(entry -> entry.order);
+
+	/** A single entity's membership in the grid **/
+	static final class Entry {
+		Entity entity;
+		/** The index of the entity in the world's entity list for the current update **/
+		int order;
+		/** Inclusive range of cells covered by the entity's bounding box **/
+		int minX, minY, maxX, maxY;
+		/** The index of the entry in the grid's tracked entries **/
+		int trackedIndex;
+		/** Whether the entity is asleep, and how long it has been at rest at the given position **/
+		boolean sleeping;
+		/** Whether the entity is frozen, frozen entities are asleep and can't be woken **/
+		boolean frozen;
+		long restTime;
+		float restX, restY;
+	}
+
+	/** The entries found by a query, which are available until the next query using the same results **/
+	static final class Results {
+		private Entry[] entries = new Entry[16];
+		private int count;
+
+		Entry get(int index) {
+			return entries[index];
+		}
+
+		/** Sorts the results by {@link Entry#order} **/
+		void sort() {
+			Arrays.sort(entries, 0, count, ORDER);
+		}
+
+		/** Releases references to the entries found by the last query **/
+		void clear() {
+			Arrays.fill(entries, 0, count, null);
+			count = 0;
+		}
+
+		private void add(Entry entry) {
+			if(count == entries.length)
+				entries = Arrays.copyOf(entries, count * 2);
+			entries[count++] = entry;
+		}
+	}
+
+	private Entry[][] buckets;
+	private int[] counts;
+	private int mask;
+
+	/** Tracked entries, used to reinsert them when the grid is resized **/
+	private Entry[] tracked;
+	private int trackedCount;
+
+	EntityGrid(int expectedEntities) {
+		allocate(expectedEntities);
+		tracked = new Entry[16];
+	}
+
+	private void allocate(int expectedEntities) {
+		int bucketCount = Math.max(64, Integer.highestOneBit(Math.max(1, expectedEntities)) << 1);
+		buckets = new Entry[bucketCount][];
+		counts = new int[bucketCount];
+		mask = bucketCount - 1;
+	}
+
+	/** Removes all entries and resizes the grid if it is too small for {@code expectedEntities} **/
+	void reset(int expectedEntities) {
+		if(expectedEntities > buckets.length) {
+			allocate(expectedEntities);
+		} else {
+			for(int i = 0; i < buckets.length; i++) {
+				if(counts[i] > 0) {
+					Arrays.fill(buckets[i], 0, counts[i], null);
+					counts[i] = 0;
+				}
+			}
+		}
+	}
+
+	static int cell(float coordinate) {
+		return (int)Math.floor(coordinate / CELL_SIZE);
+	}
+
+	private int bucket(int cellX, int cellY) {
+		int hash = cellX * 0x9E3779B1 + cellY * 0x85EBCA77;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	/** @return the number of cells covered by the provided world space bounds **/
+	static long cellCount(float left, float bottom, float right, float top) {
+		return ((long)cell(right) - cell(left) + 1) * ((long)cell(top) - cell(bottom) + 1);
+	}
+
+	/** Inserts an entry into every cell covered by its entity's current bounding box **/
+	void insert(Entry entry) {
+		Entity e = entry.entity;
+		float halfWidth = e.getWidth() * 0.5f, halfHeight = e.getHeight() * 0.5f;
+		entry.minX = cell(e.getPositionX() - halfWidth);
+		entry.maxX = cell(e.getPositionX() + halfWidth);
+		entry.minY = cell(e.getPositionY() - halfHeight);
+		entry.maxY = cell(e.getPositionY() + halfHeight);
+		addToCells(entry);
+	}
+
+	private void addToCells(Entry entry) {
+		for(int y = entry.minY; y <= entry.maxY; y++) {
+			for(int x = entry.minX; x <= entry.maxX; x++) {
+				int bucket = bucket(x, y);
+				if(!storedBefore(entry, x, y, bucket)) {
+					add(bucket, entry);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if a cell covered by the entry that comes before x, y hashes to {@code bucket}. An entry is
+	 * only stored in a bucket once, so that a query can't find it twice.
+	 */
+	private boolean storedBefore(Entry entry, int x, int y, int bucket) {
+		for(int cellY = entry.minY; cellY <= y; cellY++) {
+			for(int cellX = entry.minX, maxX = cellY == y ? x - 1 : entry.maxX; cellX <= maxX; cellX++) {
+				if(bucket(cellX, cellY) == bucket) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/** Creates and inserts an entry for {@code e} that stays in the grid until it is untracked **/
+	Entry track(Entity e) {
+		Entry entry = new Entry();
+		entry.entity = e;
+		if(trackedCount == tracked.length) {
+			tracked = Arrays.copyOf(tracked, trackedCount * 2);
+		}
+		if(trackedCount + 1 > buckets.length) {
+			allocate(trackedCount + 1);
+			for(int i = 0; i < trackedCount; i++) {
+				addToCells(tracked[i]);
+			}
+		}
+		entry.trackedIndex = trackedCount;
+		tracked[trackedCount++] = entry;
+		insert(entry);
+		return entry;
+	}
+
+	/** Removes a tracked entry from the grid **/
+	void untrack(Entry entry) {
+		remove(entry);
+		int last = --trackedCount;
+		Entry moved = tracked[entry.trackedIndex] = tracked[last];
+		moved.trackedIndex = entry.trackedIndex;
+		tracked[last] = null;
+		entry.entity = null;
+	}
+
+	/** Moves an entry to the cells covered by its entity's current bounding box if they have changed **/
+	void move(Entry entry) {
+		Entity e = entry.entity;
+		float halfWidth = e.getWidth() * 0.5f, halfHeight = e.getHeight() * 0.5f;
+		if(entry.minX != cell(e.getPositionX() - halfWidth) || entry.maxX != cell(e.getPositionX() + halfWidth) ||
+			entry.minY != cell(e.getPositionY() - halfHeight) || entry.maxY != cell(e.getPositionY() + halfHeight)) {
+			remove(entry);
+			insert(entry);
+		}
+	}
+
+	private void remove(Entry entry) {
+		for(int y = entry.minY; y <= entry.maxY; y++) {
+			for(int x = entry.minX; x <= entry.maxX; x++) {
+				int bucket = bucket(x, y);
+				if(storedBefore(entry, x, y, bucket))
+					continue;
+				Entry[] contents = buckets[bucket];
+				int last = counts[bucket] - 1;
+				for(int i = last; i >= 0; i--) {
+					if(contents[i] == entry) {
+						contents[i] = contents[last];
+						contents[last] = null;
+						counts[bucket] = last;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private void add(int bucket, Entry entry) {
+		Entry[] contents = buckets[bucket];
+		int count = counts[bucket];
+		if(contents == null) {
+			buckets[bucket] = contents = new Entry[INITIAL_BUCKET_CAPACITY];
+		} else if(count == contents.length) {
+			buckets[bucket] = contents = Arrays.copyOf(contents, count * 2);
+		}
+		contents[count] = entry;
+		counts[bucket] = count + 1;
+	}
+
+	/**
+	 * Finds every entry whose cells overlap the cells covered by the provided world space bounds, replacing
+	 * the previous contents of {@code results}. Only entries with an {@link Entry#order} greater than
+	 * {@code minOrder} are included. An entry stored in multiple cells is only found in the first cell
+	 * it shares with the bounds, so it is found once without marking it.
+	 * @return the number of entries found.
+	 */
+	int query(float left, float bottom, float right, float top, int minOrder, Results results) {
+		results.clear();
+		int minX = cell(left), minY = cell(bottom), maxX = cell(right), maxY = cell(top);
+		for(int y = minY; y <= maxY; y++) {
+			for(int x = minX; x <= maxX; x++) {
+				int bucket = bucket(x, y);
+				Entry[] contents = buckets[bucket];
+				for(int i = 0, size = counts[bucket]; i < size; i++) {
+					Entry entry = contents[i];
+					if(entry.order > minOrder && x == Math.max(entry.minX, minX) && y == Math.max(entry.minY, minY)
+						&& x <= entry.maxX && y <= entry.maxY) {
+						results.add(entry);
+					}
+				}
+			}
+		}
+		return results.count;
+	}
+}
@@ -0,0 +1,185 @@
+package ritzow.sandbox.world;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import ritzow.sandbox.world.entity.Entity;
+
+/**
+ * Stores the entities in a world in a dense array, along with an open addressing hash table from entity ID to
+ * array index that does not box IDs. Removing an entity moves the last entity into its index, so removal is
+ * constant time and indices stay the same as long as no entities are added or removed. Each entity is stored
+ * with its {@link EntityGrid.Entry}, whose {@link EntityGrid.Entry#order} is kept equal to the entity's index.
+ * @author Solomon Ritzow
+ */
+final class EntityRegistry implements Iterable<Entity> {
+	private Entity[] entities;
+	private EntityGrid.Entry[] entries;
+	private int size;
+
+	/** Entity IDs and their index in the dense arrays plus one, or zero for an empty table slot **/
+	private int[] keys, indices;
+	private int mask;
+
+	/** Incremented when entities are added or removed, to detect modification during iteration **/
+	private int modifications;
+
+	EntityRegistry(int capacity) {
+		capacity = Math.max(capacity, 16);
+		entities = new Entity[capacity];
+		entries = new EntityGrid.Entry[capacity];
+		allocateTable(capacity);
+	}
+
+	private void allocateTable(int capacity) {
+		int tableSize = Integer.highestOneBit(capacity - 1) << 2; //at most half full
+		keys = new int[tableSize];
+		indices = new int[tableSize];
+		mask = tableSize - 1;
+	}
+
+	private static int hash(int id) {
+		int hash = id * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	int size() {
+		return size;
+	}
+
+	Entity get(int index) {
+		return entities[Objects.checkIndex(index, size)];
+	}
+
+	EntityGrid.Entry entry(int index) {
+		return entries[Objects.checkIndex(index, size)];
+	}
+
+	/** @return the array backing the registry, valid until an entity is added or removed **/
+	Entity[] entities() {
+		return entities;
+	}
+
+	/** @return the entries of the entities returned by {@link #entities()}, at the same indices **/
+	EntityGrid.Entry[] entries() {
+		return entries;
+	}
+
+	/** @return the table slot containing {@code id}, or -1 if there is no entity with the ID **/
+	private int find(int id) {
+		for(int slot = hash(id) & mask; indices[slot] != 0; slot = (slot + 1) & mask) {
+			if(keys[slot] == id) return slot;
+		}
+		return -1;
+	}
+
+	/** @return the index of the entity with the provided ID, or -1 if there is none **/
+	int indexOf(int id) {
+		int slot = find(id);
+		return slot < 0 ? -1 : indices[slot] - 1;
+	}
+
+	Entity getByID(int id) {
+		int slot = find(id);
+		return slot < 0 ? null : entities[indices[slot] - 1];
+	}
+
+	EntityGrid.Entry entryByID(int id) {
+		int slot = find(id);
+		return slot < 0 ? null : entries[indices[slot] - 1];
+	}
+
+	/** Adds an entity whose ID is not already in the registry to the end of the dense array **/
+	void add(Entity e, EntityGrid.Entry entry) {
+		if(size == entities.length) {
+			int capacity = size * 2;
+			entities = Arrays.copyOf(entities, capacity);
+			entries = Arrays.copyOf(entries, capacity);
+			allocateTable(capacity);
+			for(int i = 0; i < size; i++) {
+				insert(entities[i].getID(), i);
+			}
+		}
+		entities[size] = e;
+		entries[size] = entry;
+		entry.order = size;
+		insert(e.getID(), size++);
+		modifications++;
+	}
+
+	private void insert(int id, int index) {
+		int slot = hash(id) & mask;
+		while(indices[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = id;
+		indices[slot] = index + 1;
+	}
+
+	/** Removes the entity at {@code index}, replacing it with the last entity **/
+	void remove(int index) {
+		Objects.checkIndex(index, size);
+		delete(find(entities[index].getID()));
+		int last = --size;
+		if(index != last) {
+			Entity moved = entities[index] = entities[last];
+			EntityGrid.Entry movedEntry = entries[index] = entries[last];
+			movedEntry.order = index;
+			indices[find(moved.getID())] = index + 1;
+		}
+		entities[last] = null;
+		entries[last] = null;
+		modifications++;
+	}
+
+	/** Empties a table slot, shifting back later entries in the same probe sequence so lookups don't stop early **/
+	private void delete(int slot) {
+		for(int next = (slot + 1) & mask; indices[next] != 0; next = (next + 1) & mask) {
+			int home = hash(keys[next]) & mask;
+			//move the entry back unless its home slot is cyclically within (slot, next]
+			if(slot <= next ? slot >= home || home > next : slot >= home && home > next) {
+				keys[slot] = keys[next];
+				indices[slot] = indices[next];
+				slot = next;
+			}
+		}
+		indices[slot] = 0;
+	}
+
+	Stream<Entity> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	@Override
+	public Spliterator<Entity> spliterator() {
+		return Spliterators.spliterator(entities, 0, size, Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+
+	@Override
+	public Iterator<Entity> iterator() {
+		return new Iterator<>() {
+			private final int expectedModifications = modifications;
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				return index < size;
+			}
+
+			@Override
+			public Entity next() {
+				if(modifications != expectedModifications)
+					throw new ConcurrentModificationException();
+				if(index >= size)
+					throw new NoSuchElementException();
+				return entities[index++];
+			}
+		};
+	}
+}
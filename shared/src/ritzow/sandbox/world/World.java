@@ -1,15 +1,17 @@
 package ritzow.sandbox.world;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
-import ritzow.sandbox.data.Bytes;
-import ritzow.sandbox.data.Serializer;
 import ritzow.sandbox.data.Transportable;
 import ritzow.sandbox.data.TransportableDataReader;
+import ritzow.sandbox.data.TransportableDataWriter;
 import ritzow.sandbox.util.Utility;
 import ritzow.sandbox.world.block.Block;
 import ritzow.sandbox.world.entity.Entity;
+import ritzow.sandbox.world.entity.EntityStore;
 
 import static ritzow.sandbox.util.Utility.intersection;
 
@@ -24,6 +26,9 @@ public class World implements Transportable, Iterable<Entity> {
 
 	public static final int LAYER_MAIN = 0, LAYER_BACKGROUND = 1;
 
+	/** The number of entities in each section of a serialized world after the section containing the blocks **/
+	private static final int ENTITIES_PER_SECTION = 1024;
+
 	//Entity operations:
 	//Get an entity by ID
 	//Remove an entity by ID or by object
@@ -31,9 +36,8 @@ public class World implements Transportable, Iterable<Entity> {
 	//iterate over entities and remaining entities
 	//Remove entities while iterating
 
-	/** collection of entities in the world **/
-	private final List<Entity> entities;
-	private final Map<Integer, Entity> entitiesID;
+	/** collection of entities in the world, indexed by ID **/
+	private final EntityRegistry entities;
 
 	/** blocks in the world that collide with entities and and are rendered **/
 	private final BlockGrid blocks;
@@ -47,25 +51,112 @@ public class World implements Transportable, Iterable<Entity> {
 	/** For access protection during entity updates **/
 	private boolean isEntitiesUnmodifiable = false;
 
+	/** Spatial index of all entities, updated as entities are added, removed and moved **/
+	private final EntityGrid entityGrid;
+
+	/** Broad phase for collisions with entities that interact with entities, rebuilt every update **/
+	private final EntityGrid interactingGrid;
+	private EntityGrid.Entry[] interactingEntries;
+	private int interactingCount;
+
+	/** Results of the grid queries made by updates, which only query the grids from the updating thread **/
+	private final EntityGrid.Results updateResults = new EntityGrid.Results();
+
+	/** Moves entities set to a new position outside of an update in the spatial index **/
+	private final Entity.MoveListener reindex = this::reindex;
+
+	/** Results of entity queries, which can be made by entities updated in parallel **/
+	private static final ThreadLocal<EntityGrid.Results> QUERY_RESULTS = ThreadLocal.withInitial(EntityGrid.Results::new);
+
+	/** Holds the position and velocity of every entity when enabled, otherwise null **/
+	private EntityStore store;
+
+	/** Number of threads used for phased updates, or 0 if updates are not phased **/
+	private int parallelism;
+	/** Runs phased updates if parallelism is greater than 1 **/
+	private ForkJoinPool updatePool;
+	private CollisionPairs collisionPairs;
+
+	/** Time an entity has to stay at rest before it is put to sleep **/
+	private static final long SLEEP_DELAY = Utility.millisToNanos(1000);
+	private int sleepingCount, frozenCount;
+	private final List<Entity> wakeBuffer;
+
+	/** Number of updates that have been simulated **/
+	private long tick;
+
 	/**
 	 * Initializes a new World object with a foreground, background, entity storage, and gravity.
 	 * @param width the width of the foreground and background
 	 * @param height the height of the foreground and background
 	 */
 	public World(int width, int height) {
-		entities = new ArrayList<>();
-		entitiesID = new HashMap<>();
+		entities = new EntityRegistry(0);
 		blocks = new BlockGrid(2, width, height);
+		entityGrid = new EntityGrid(0);
+		interactingGrid = new EntityGrid(0);
+		interactingEntries = new EntityGrid.Entry[0];
+		wakeBuffer = new ArrayList<>();
 	}
 
+	/**
+	 * Creates a world from blocks and entities that were loaded separately.
+	 * @param blocks the blocks of the world, which must have two layers
+	 * @param entities entities with unique IDs, which are added to the world in order
+	 */
+	public World(BlockGrid blocks, Collection<? extends Entity> entities) {
+		if(blocks.getLayers() != 2)
+			throw new IllegalArgumentException("world block grids must have 2 layers");
+		this.blocks = blocks;
+		this.entities = new EntityRegistry(entities.size());
+		entityGrid = new EntityGrid(entities.size());
+		interactingGrid = new EntityGrid(0);
+		interactingEntries = new EntityGrid.Entry[0];
+		wakeBuffer = new ArrayList<>();
+		for(Entity e : entities) {
+			lastEntityID = Math.max(lastEntityID, e.getID());
+			addEntity(e);
+		}
+	}
+
+	/** Reads a world written by {@link #write(TransportableDataWriter)}, or the previous format without sections **/
 	public World(TransportableDataReader reader) {
-		blocks = Objects.requireNonNull(reader.readObject(), "block grid can't be null.");
+		BlockGrid grid = reader.readObject();
 		int entityCount = reader.readInteger();
-		entities = new ArrayList<>(entityCount);
-		entitiesID = new HashMap<>(entityCount);
+		if(entityCount < 0)
+			throw new IllegalArgumentException("negative entity count " + entityCount);
+		Entity[] loaded = new Entity[entityCount];
+		if(grid == null) {
+			BlockGrid[] blocksSection = new BlockGrid[1];
+			int sections = reader.readSections((section, index) -> {
+				if(index == 0) {
+					blocksSection[0] = section.readObject();
+				} else {
+					int start = (index - 1) * ENTITIES_PER_SECTION;
+					if(start >= loaded.length)
+						throw new IllegalArgumentException("entity section " + index + " is outside the world");
+					for(int i = start, end = Math.min(loaded.length, start + ENTITIES_PER_SECTION); i < end; i++) {
+						loaded[i] = section.readObject();
+					}
+				}
+			});
+			if(sections != sectionCount(entityCount))
+				throw new IllegalArgumentException(sections + " sections in place of " + sectionCount(entityCount));
+			grid = blocksSection[0];
+		} else {
+			for(int i = 0; i < entityCount; ++i) {
+				loaded[i] = reader.readObject();
+			}
+		}
+		blocks = Objects.requireNonNull(grid, "block grid can't be null.");
+		entities = new EntityRegistry(entityCount);
+		entityGrid = new EntityGrid(entityCount);
+		interactingGrid = new EntityGrid(0);
+		interactingEntries = new EntityGrid.Entry[0];
+		wakeBuffer = new ArrayList<>();
 		int maxEntityID = 0;
-		for(int i = 0; i < entityCount; ++i) {
-			Entity e = Objects.requireNonNull(reader.readObject(), "null entities prohibited by World");
+		for(Entity e : loaded) {
+			Objects.requireNonNull(e, "null entities prohibited by World");
 			int id = e.getID();
 			if(id > maxEntityID) maxEntityID = id;
 			addEntity(e);
@@ -73,40 +164,39 @@ public class World implements Transportable, Iterable<Entity> {
 		lastEntityID = maxEntityID;
 	}
 
-	@Override
-	public final byte[] getBytes(Serializer ser) { //needed for saving world to file as Transportable
-		return getBytesFiltered(e -> true, ser);
+	/** @return the number of sections of a serialized world, the blocks followed by groups of entities **/
+	private static int sectionCount(int entityCount) {
+		return 1 + (entityCount + ENTITIES_PER_SECTION - 1) / ENTITIES_PER_SECTION;
 	}
 
-	public final byte[] getBytesFiltered(Predicate<Entity> entityFilter, Serializer ser) {
-		//serialize foreground and background
-		byte[] blocksBytes = ser.serialize(blocks);
-
-		List<byte[]> elist = new ArrayList<>();
-		int totalEntityBytes = entities.stream()
-				.filter(entityFilter)
-				.map(ser::serialize)
-				.peek(elist::add)
-				.mapToInt(a -> a.length)
-				.sum();
-
-		//foreground data, background data, number of entities, entity data (size)
-		byte[] bytes = new byte[blocksBytes.length + Integer.BYTES + totalEntityBytes];
-		int index = 0;
-
-		//write foreground data
-		Bytes.copy(blocksBytes, bytes, index);
-		index += blocksBytes.length;
-
-		//write number of entities
-		Bytes.putInteger(bytes, index, elist.size());
-		index += Integer.BYTES;
+	@Override
+	public final void write(TransportableDataWriter out) { //needed for saving world to file as Transportable
+		write(out, e -> true);
+	}
 
-		for(byte[] dat : elist) {
-			Bytes.copy(dat, bytes, index);
-			index += dat.length;
+	/**
+	 * Writes the blocks and the entities accepted by the filter. The blocks and each group of entities are written
+	 * as separate sections, which are written and read in parallel.
+	 */
+	public final void write(TransportableDataWriter out, Predicate<Entity> entityFilter) {
+		List<Entity> saved = new ArrayList<>();
+		for(Entity e : entities) {
+			if(entityFilter.test(e)) saved.add(e);
 		}
-		return bytes;
+
+		//a null block grid marks a world written in sections, which previously started with its block grid
+		out.writeObject(null);
+		out.writeInteger(saved.size());
+		out.writeSections(sectionCount(saved.size()), (section, index) -> {
+			if(index == 0) {
+				section.writeObject(blocks);
+			} else {
+				int start = (index - 1) * ENTITIES_PER_SECTION;
+				for(Entity e : saved.subList(start, Math.min(saved.size(), start + ENTITIES_PER_SECTION))) {
+					section.writeObject(e);
+				}
+			}
+		});
 	}
 
 	@Override
@@ -148,14 +238,63 @@ public class World implements Transportable, Iterable<Entity> {
 		this.onRemove = e -> {};
 	}
 
+	/**
+	 * Enables or disables storing entity positions and velocities in an {@link EntityStore}.
+	 * While enabled, all entities are integrated in a single pass after every entity has been updated,
+	 * instead of each entity being integrated immediately after its own update, so entity collisions are
+	 * resolved using the positions of every entity at the end of the timestep.
+	 * @param enabled whether to use an entity store.
+	 */
+	public void setEntityStore(boolean enabled) {
+		checkEntitiesModifiable();
+		if(enabled && store == null) {
+			store = new EntityStore(entities.size());
+			for(int i = 0; i < entities.size(); i++) {
+				if(!entities.entry(i).sleeping) store.attach(entities.get(i));
+			}
+		} else if(!enabled && store != null) {
+			store.clear();
+			store = null;
+		}
+	}
+
+	/**
+	 * Switches between the default update, which updates, integrates, and resolves collisions for one entity
+	 * before moving on to the next, and a phased update, which runs each of those steps for every entity before
+	 * starting the next step. Phased updates run entity updates, integration, collision detection, and block
+	 * collisions on up to {@code parallelism} threads, and produce the same result for any parallelism.
+	 * Collisions between entities are always resolved on the updating thread in entity list order. With more than
+	 * one thread, {@link Entity#update(World, long)} and block collision handlers may run concurrently for
+	 * different entities and must only modify the entity they are called on.
+	 * @param parallelism the number of threads to use for phased updates, or 0 for the default update.
+	 */
+	public void setUpdateParallelism(int parallelism) {
+		checkEntitiesModifiable();
+		if(parallelism < 0)
+			throw new IllegalArgumentException("parallelism can't be negative");
+		if(updatePool != null) {
+			updatePool.shutdown();
+			updatePool = null;
+		}
+		if(parallelism > 1) {
+			updatePool = new ForkJoinPool(parallelism);
+		}
+		if(parallelism > 0 && collisionPairs == null) {
+			collisionPairs = new CollisionPairs();
+		}
+		this.parallelism = parallelism;
+	}
+
+	/** Removes every entity matching {@code predicate}, the order of the remaining entities may change **/
 	public void removeIf(Predicate<Entity> predicate) {
-		Iterator<Entity> it = entities.iterator();
-		while(it.hasNext()) {
-			Entity next = it.next();
+		checkEntitiesModifiable();
+		for(int i = 0; i < entities.size();) {
+			Entity next = entities.get(i);
 			if(predicate.test(next)) {
-				it.remove();
-				entitiesID.remove(next.getID());
+				removeAt(i);
 				if(onRemove != null) onRemove.accept(next);
+			} else {
+				i++;
 			}
 		}
 	}
@@ -165,7 +304,7 @@ public class World implements Transportable, Iterable<Entity> {
 	}
 
 	public boolean contains(Entity e) {
-		return entities.contains(e);
+		return entities.indexOf(e.getID()) >= 0;
 	}
 
 	@Override
@@ -184,11 +323,11 @@ public class World implements Transportable, Iterable<Entity> {
 	}
 
 	public Entity getEntityFromIdOrNull(int id) {
-		return entitiesID.get(id);
+		return entities.getByID(id);
 	}
 
 	public Entity getEntityFromID(int id) {
-		return Objects.requireNonNull(entitiesID.get(id), "No entity in world with provided ID");
+		return Objects.requireNonNull(entities.getByID(id), "No entity in world with provided ID");
 	}
 
 	/**
@@ -200,16 +339,85 @@ public class World implements Transportable, Iterable<Entity> {
 	 * @return A collection of all the entities in the defined rectangle.
 	 */
 	public Collection<Entity> getEntitiesInRectangle(float x, float y, float width, float height) {
-		Collection<Entity> col = null;
-		for(Entity e : entities) {
-			if(intersection(x, y, width, height, e.getPositionX(), e.getPositionY(), e.getWidth(), e.getHeight())) {
-				if(col == null) {
-					col = new ArrayList<>();
-					col.add(e);
+		return getEntitiesInRectangle(x, y, width, height, new ArrayList<>());
+	}
+
+	/**
+	 * Adds all entities that are partially or fully within the given rectangle bounds to {@code result}.
+	 * The lookup itself does not allocate, so a reused result collection with enough capacity makes the
+	 * query allocation free. Entities can query the world while they are updated in parallel. During an
+	 * update, entities are indexed where they were at the start of the update, but are tested against
+	 * their current bounds.
+	 * @param x the center x coordinate
+	 * @param y the center y coordinate
+	 * @param width the width of the rectangle
+	 * @param height the height of the rectangle
+	 * @param result the collection to add the entities to
+	 * @return {@code result}
+	 */
+	public <C extends Collection<? super Entity>> C getEntitiesInRectangle(float x, float y, float width, float height, C result) {
+		float halfWidth = width * 0.5f, halfHeight = height * 0.5f;
+		float left = x - halfWidth, bottom = y - halfHeight, right = x + halfWidth, top = y + halfHeight;
+		if(EntityGrid.cellCount(left, bottom, right, top) > entities.size()) {
+			//cheaper to check every entity than every cell
+			for(int i = 0; i < entities.size(); i++) {
+				Entity e = entities.get(i);
+				if(intersection(x, y, width, height, e.getPositionX(), e.getPositionY(), e.getWidth(), e.getHeight())) {
+					result.add(e);
 				}
 			}
+		} else {
+			EntityGrid.Results found = QUERY_RESULTS.get();
+			int count = entityGrid.query(left, bottom, right, top, Integer.MIN_VALUE, found);
+			for(int i = 0; i < count; i++) {
+				Entity e = found.get(i).entity;
+				if(intersection(x, y, width, height, e.getPositionX(), e.getPositionY(), e.getWidth(), e.getHeight())) {
+					result.add(e);
+				}
+			}
+			found.clear();
 		}
-		return col == null ? Collections.emptyList() : col;
+		return result;
+	}
+
+	/**
+	 * Adds all entities whose bounds are partially or fully within {@code radius} of a point to {@code result}.
+	 * Like {@link #getEntitiesInRectangle(float, float, float, float, Collection)}, the lookup does not allocate.
+	 * @param x the x coordinate of the center of the circle
+	 * @param y the y coordinate of the center of the circle
+	 * @param radius the distance from the center
+	 * @param result the collection to add the entities to
+	 * @return {@code result}
+	 */
+	public <C extends Collection<? super Entity>> C getEntitiesInRadius(float x, float y, float radius, C result) {
+		float left = x - radius, bottom = y - radius, right = x + radius, top = y + radius;
+		if(EntityGrid.cellCount(left, bottom, right, top) > entities.size()) {
+			for(int i = 0; i < entities.size(); i++) {
+				Entity e = entities.get(i);
+				if(withinRadius(e, x, y, radius)) {
+					result.add(e);
+				}
+			}
+		} else {
+			EntityGrid.Results found = QUERY_RESULTS.get();
+			int count = entityGrid.query(left, bottom, right, top, Integer.MIN_VALUE, found);
+			for(int i = 0; i < count; i++) {
+				Entity e = found.get(i).entity;
+				if(withinRadius(e, x, y, radius)) {
+					result.add(e);
+				}
+			}
+			found.clear();
+		}
+		return result;
+	}
+
+	private static boolean withinRadius(Entity e, float x, float y, float radius) {
+		float halfWidth = e.getWidth() * 0.5f, halfHeight = e.getHeight() * 0.5f;
+		//closest point on the entity's bounds to the center of the circle
+		float closestX = Utility.clamp(e.getPositionX() - halfWidth, x, e.getPositionX() + halfWidth);
+		float closestY = Utility.clamp(e.getPositionY() - halfHeight, y, e.getPositionY() + halfHeight);
+		return Utility.withinDistance(x, y, closestX, closestY, radius);
 	}
 
 	private void checkEntitiesModifiable() {
@@ -218,8 +426,176 @@ public class World implements Transportable, Iterable<Entity> {
 	}
 
 	private void addEntity(Entity e) {
-		entities.add(e);
-		entitiesID.put(e.getID(), e);
+		if(entities.indexOf(e.getID()) >= 0)
+			throw new IllegalStateException("world already contains an entity with ID " + e.getID());
+		entities.add(e, entityGrid.track(e));
+		if(store != null) store.attach(e);
+		e.savePosition();
+		e.setMoveListener(reindex);
+	}
+
+	/** Moves an entity whose position was set outside of an update to the grid cells it now covers **/
+	private void reindex(Entity e) {
+		//updates move every entity they update in the index before they finish
+		if(!isEntitiesUnmodifiable) {
+			EntityGrid.Entry entry = entities.entryByID(e.getID());
+			if(entry != null) entityGrid.move(entry);
+		}
+	}
+
+	/** Removes the entity at {@code index} from the entity list and indexes, the last entity takes its place **/
+	private Entity removeAt(int index) {
+		Entity e = entities.get(index);
+		EntityGrid.Entry entry = entities.entry(index);
+		if(entry.frozen) {
+			frozenCount--;
+		}
+		if(entry.sleeping) {
+			sleepingCount--;
+		} else if(store != null) {
+			store.detach(e);
+		}
+		entityGrid.untrack(entry);
+		entities.remove(index);
+		e.setMoveListener(null);
+		return e;
+	}
+
+	/**
+	 * Returns whether an entity is asleep. Entities that {@link Entity#canSleep() can sleep} are put to sleep
+	 * after they stay at rest for a while, and are not updated, moved, or checked for block collisions until
+	 * they are woken. Sleeping entities are woken when a block next to them changes, when they collide with an
+	 * entity that interacts with them, or by {@link #wake(Entity)}.
+	 * @param e an entity in the world.
+	 * @return true if the entity is asleep.
+	 */
+	public boolean isSleeping(Entity e) {
+		EntityGrid.Entry entry = entities.entryByID(e.getID());
+		return entry != null && entry.sleeping;
+	}
+
+	/** @return the number of times the world has been updated, which increases by one every update **/
+	public final long getTick() {
+		return tick;
+	}
+
+	/** @return the number of sleeping entities in the world, including frozen entities **/
+	public int sleepingEntities() {
+		return sleepingCount;
+	}
+
+	/** @return the number of frozen entities in the world **/
+	public int frozenEntities() {
+		return frozenCount;
+	}
+
+	/**
+	 * Freezes or unfreezes an entity. A frozen entity is asleep and isn't woken by block changes, collisions,
+	 * or {@link #wake(Entity)}, so it stays where it is until it is unfrozen, for example while the blocks around it
+	 * are unloaded. Unfreezing an entity wakes it.
+	 * @param e an entity in the world.
+	 */
+	public void setFrozen(Entity e, boolean frozen) {
+		EntityGrid.Entry entry = entities.entryByID(e.getID());
+		if(entry == null)
+			throw new IllegalArgumentException(e + " is not in the world");
+		if(frozen && !entry.frozen) {
+			entry.frozen = true;
+			frozenCount++;
+			if(!entry.sleeping) {
+				sleep(entry);
+			}
+		} else if(!frozen && entry.frozen) {
+			entry.frozen = false;
+			frozenCount--;
+			wake(entry);
+		}
+	}
+
+	/** @return true if the entity is frozen, see {@link #setFrozen(Entity, boolean)} **/
+	public boolean isFrozen(Entity e) {
+		EntityGrid.Entry entry = entities.entryByID(e.getID());
+		return entry != null && entry.frozen;
+	}
+
+	/** Wakes an entity if it is asleep, should be called after changing its state from outside of an update **/
+	public void wake(Entity e) {
+		EntityGrid.Entry entry = entities.entryByID(e.getID());
+		if(entry != null) wake(entry);
+	}
+
+	private void wake(EntityGrid.Entry entry) {
+		if(entry.frozen) return;
+		entry.restTime = 0;
+		if(entry.sleeping) {
+			entry.sleeping = false;
+			sleepingCount--;
+			if(store != null) store.attach(entry.entity);
+		}
+	}
+
+	/** Puts an awake entity to sleep **/
+	private void sleep(EntityGrid.Entry entry) {
+		entry.sleeping = true;
+		if(sleepingCount++ == 0) {
+			//only sleeping entities are woken by block changes, so the constructors don't have to pass this to the blocks
+			blocks.setChangeListener(this::wakeNear);
+		}
+		if(store != null) store.detach(entry.entity);
+	}
+
+	/** Puts an entity to sleep once it has stayed in the same place without velocity for {@link #SLEEP_DELAY} **/
+	private void updateRest(EntityGrid.Entry entry, long nanoseconds) {
+		Entity e = entry.entity;
+		if(e.canSleep()) {
+			float x = e.getPositionX(), y = e.getPositionY();
+			if(e.getVelocityX() == 0 && e.getVelocityY() == 0 && x == entry.restX && y == entry.restY) {
+				entry.restTime += nanoseconds;
+				if(entry.restTime >= SLEEP_DELAY) {
+					sleep(entry);
+				}
+			} else {
+				entry.restTime = 0;
+				entry.restX = x;
+				entry.restY = y;
+			}
+		}
+	}
+
+	/** Wakes entities touching or next to a changed region of blocks **/
+	private void wakeNear(int x, int y, int width, int height) {
+		if(sleepingCount > 0) {
+			//blocks are centered on their coordinates, expand by a block to include entities resting on neighbours
+			getEntitiesInRectangle(x + (width - 1) * 0.5f, y + (height - 1) * 0.5f, width + 2, height + 2, wakeBuffer);
+			for(Entity e : wakeBuffer) {
+				wake(e);
+			}
+			wakeBuffer.clear();
+		}
+	}
+
+	/** Wakes sleeping entities that overlap an awake entity that one of the two interacts with **/
+	private void wakeTouched(Entity[] entities, EntityGrid.Entry[] entries, int size) {
+		if(sleepingCount > 0) {
+			for(int i = 0; i < size; i++) {
+				Entity e = entities[i];
+				if(e.interactsWithEntities()) {
+					EntityGrid.Entry entry = entries[i];
+					float posX = e.getPositionX(), posY = e.getPositionY();
+					float halfWidth = e.getWidth() * 0.5f, halfHeight = e.getHeight() * 0.5f;
+					int count = entityGrid.query(posX - halfWidth, posY - halfHeight, posX + halfWidth, posY + halfHeight, Integer.MIN_VALUE, updateResults);
+					for(int j = 0; j < count; j++) {
+						EntityGrid.Entry other = updateResults.get(j);
+						Entity o = other.entity;
+						if(other.sleeping != entry.sleeping && intersection(posX, posY, e.getWidth(), e.getHeight(),
+								o.getPositionX(), o.getPositionY(), o.getWidth(), o.getHeight())) {
+							wake(entry.sleeping ? entry : other);
+						}
+					}
+					updateResults.clear();
+				}
+			}
+		}
 	}
 
 	/**
@@ -243,10 +619,9 @@ public class World implements Transportable, Iterable<Entity> {
 	/** Removes the entity with id {@code entityID} from the world,
 	 * returns null if the entity does not exist. */
 	public final Entity remove(int entityID) {
-		Entity e = entitiesID.remove(entityID); //Objects.requireNonNull(, "entity not found");
-		if(!entities.remove(e))
-			throw new IllegalStateException("entity not found in list, but found in map");
-		return e;
+		checkEntitiesModifiable();
+		int index = entities.indexOf(entityID);
+		return index < 0 ? null : removeAt(index);
 	}
 
 	private static final float FRICTION_COEFFICIENT = 100_000_000_000_000_000f;
@@ -256,51 +631,283 @@ public class World implements Transportable, Iterable<Entity> {
 	 * Entities are updated, gravity is applied, entity vs entity collisions are resolved,
 	 * and entity vs block collisions are resolved. If {@code setRemoveEntities has been called},
 	 * entities that are below the bottom of the world will be removed and, if provided, the entity
-	 * remove handler will be called.
+	 * remove handler will be called. Removal happens before any entity is updated, so an entity flagged
+	 * for deletion during an update is removed at the start of the next update. The position of each entity
+	 * before the update is saved for {@link Entity#getInterpolatedPositionX(float)}, and the tick counter is incremented.
 	 * @param nanoseconds the amount of time to simulate.
 	 */
 	public final void update(long nanoseconds) {
 		isEntitiesUnmodifiable = true;
-		var entities = this.entities;
-		int size = entities.size();
-		for(int i = 0; i < size; i++) {
-			Entity e = entities.get(i);
-			//remove entities that are below the world or are flagged for deletion
-			if(onRemove != null && e.getPositionY() < 0 || e.getShouldDelete()) {
-				entitiesID.remove(e.getID());
-				onRemove.accept(entities.remove(i));
-				size--;
-			} else {
+		removeEntities();
+		//entities can't be added or removed until the update is over, so the arrays stay valid
+		Entity[] entities = this.entities.entities();
+		EntityGrid.Entry[] entries = this.entities.entries();
+		int size = this.entities.size();
+		wakeTouched(entities, entries, size);
+		if(parallelism > 0) {
+			updatePhased(entities, entries, size, nanoseconds);
+		} else if(store == null) {
+			prepareBroadPhase(entities, entries, size);
+			for(int i = 0; i < size; i++) {
+				if(entries[i].sleeping) continue;
+				Entity e = entities[i];
+				e.savePosition();
 				//update anything specific to an entity, can update position and velocity
 				e.update(this, nanoseconds);
 
 				//update position and velocity
-				e.setPositionX(Math.fma(e.getVelocityX(), nanoseconds, e.getPositionX()));
-				e.setVelocityY(Math.fma(-GRAVITY, nanoseconds, e.getVelocityY()));
-				e.setPositionY(Math.fma(e.getVelocityY(), nanoseconds, e.getPositionY()));
-
-				//check for entity vs. entity collisions with all entities that have not already been
-				//collision checked with (for first element, all entites, for last, no entities)
-				for(int j = i + 1; j < size; j++) {
-					resolveEntityCollision(e, entities.get(j), nanoseconds);
+				integrate(e, nanoseconds);
+
+				resolveCollisions(e, entries[i], nanoseconds);
+			}
+		} else {
+			for(int i = 0; i < size; i++) {
+				if(entries[i].sleeping) continue;
+				entities[i].savePosition();
+				entities[i].update(this, nanoseconds);
+			}
+			store.integrate(nanoseconds, GRAVITY);
+			prepareBroadPhase(entities, entries, size);
+			for(int i = 0; i < size; i++) {
+				if(!entries[i].sleeping) resolveCollisions(entities[i], entries[i], nanoseconds);
+			}
+		}
+		if(parallelism == 0) {
+			//phased updates move entries as their last step
+			for(int i = 0; i < size; i++) {
+				if(!entries[i].sleeping) entityGrid.move(entries[i]);
+			}
+		}
+		tick++;
+		isEntitiesUnmodifiable = false;
+	}
+
+	private static void integrate(Entity e, long nanoseconds) {
+		e.setPositionX(Math.fma(e.getVelocityX(), nanoseconds, e.getPositionX()));
+		e.setVelocityY(Math.fma(-GRAVITY, nanoseconds, e.getVelocityY()));
+		e.setPositionY(Math.fma(e.getVelocityY(), nanoseconds, e.getPositionY()));
+	}
+
+	/** Resolves collisions of an entity after it has been integrated **/
+	private void resolveCollisions(Entity e, EntityGrid.Entry entry, long nanoseconds) {
+		//check for entity vs. entity collisions with all nearby entities that have not already been
+		//collision checked with (for first element, all entites, for last, no entities)
+		resolveEntityCollisions(e, entry.order, nanoseconds);
+
+		//Check for entity collisions with blocks
+		if(e.collidesWithBlocks()) {
+			collideWithBlocks(e, nanoseconds);
+		}
+
+		updateRest(entry, nanoseconds);
+		entityGrid.move(entry);
+	}
+
+	/** Resolves collisions between an entity and solid blocks and applies friction from the blocks it touches **/
+	private void collideWithBlocks(Entity e, long nanoseconds) {
+		float friction = resolveBlockCollisions(e, nanoseconds);
+		if(friction != 0) {
+			friction = Utility.average(e.getFriction(), friction);
+			float delta = nanoseconds / friction / FRICTION_COEFFICIENT;
+			if(e.getVelocityX() > 0) {
+				e.setVelocityX(Math.max(0, e.getVelocityX() - delta));
+			} else if(e.getVelocityX() < 0) {
+				e.setVelocityX(Math.min(e.getVelocityX() + delta, 0));
+			}
+		}
+	}
+
+	/** Minimum number of entities processed by a single task during phased updates **/
+	private static final int PHASE_TASK_SIZE = 256;
+
+	/**
+	 * Runs each step of the update for every entity before starting the next step.
+	 * Every step except entity collision resolution and spatial index updates is split into tasks
+	 * over disjoint ranges of entities (or world bands for collision detection), so the result does not
+	 * depend on how many threads run the tasks.
+	 */
+	private void updatePhased(Entity[] entities, EntityGrid.Entry[] entries, int size, long nanoseconds) {
+		EntityStore store = this.store;
+		forEachRange(size, PHASE_TASK_SIZE, (start, end) -> {
+			for(int i = start; i < end; i++) {
+				if(entries[i].sleeping) continue;
+				Entity e = entities[i];
+				e.savePosition();
+				e.update(this, nanoseconds);
+				if(store == null) integrate(e, nanoseconds);
+			}
+		});
+
+		if(store != null) {
+			forEachRange(store.size(), PHASE_TASK_SIZE, (start, end) -> store.integrate(start, end, nanoseconds, GRAVITY));
+		}
+
+		CollisionPairs pairs = collisionPairs;
+		pairs.reset(size);
+		forEachRange(size, PHASE_TASK_SIZE, (start, end) -> {
+			for(int i = start; i < end; i++) {
+				pairs.setBounds(i, entities[i]);
+			}
+		});
+		int bands = pairs.partition(parallelism * 4);
+		forEachRange(bands, 1, (start, end) -> {
+			for(int band = start; band < end; band++) {
+				pairs.find(band);
+			}
+		});
+		pairs.merge();
+
+		//collision handlers can modify both entities, so resolve every pair in order on this thread
+		for(int pair = 0, count = pairs.count(); pair < count; pair++) {
+			int first = pairs.first(pair), second = pairs.second(pair);
+			if(resolveEntityCollision(entities[first], entities[second], nanoseconds)) {
+				wake(entries[first]);
+				wake(entries[second]);
+			}
+		}
+
+		forEachRange(size, PHASE_TASK_SIZE, (start, end) -> {
+			for(int i = start; i < end; i++) {
+				Entity e = entities[i];
+				if(!entries[i].sleeping && e.collidesWithBlocks()) {
+					collideWithBlocks(e, nanoseconds);
 				}
+			}
+		});
 
-				//Check for entity collisions with blocks
-				if(e.collidesWithBlocks()) {
-					float friction = resolveBlockCollisions(e, nanoseconds);
-					if(friction != 0) {
-						friction = Utility.average(e.getFriction(), friction);
-						float delta = nanoseconds / friction / FRICTION_COEFFICIENT;
-						if(e.getVelocityX() > 0) {
-							e.setVelocityX(Math.max(0, e.getVelocityX() - delta));
-						} else if(e.getVelocityX() < 0) {
-							e.setVelocityX(Math.min(e.getVelocityX() + delta, 0));
-						}
-					}
+		for(int i = 0; i < size; i++) {
+			EntityGrid.Entry entry = entries[i];
+			if(!entry.sleeping) {
+				updateRest(entry, nanoseconds);
+				entityGrid.move(entry);
+			}
+		}
+	}
+
+	private interface RangeAction {
+		void run(int start, int end);
+	}
+
+	/** Runs {@code action} over [0, size) on the update pool, or on this thread if there is no pool **/
+	private void forEachRange(int size, int minTaskSize, RangeAction action) {
+		if(updatePool == null || size <= minTaskSize) {
+			action.run(0, size);
+		} else {
+			int taskSize = Math.max(minTaskSize, size / (parallelism * 4));
+			updatePool.invoke(new RangeTask(action, 0, size, taskSize));
+		}
+	}
+
+	private static final class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		@SuppressWarnings("serial") //tasks are never serialized
+		private final RangeAction action;
+		private final int start, end, taskSize;
+
+		RangeTask(RangeAction action, int start, int end, int taskSize) {
+			this.action = action;
+			this.start = start;
+			this.end = end;
+			this.taskSize = taskSize;
+		}
+
+		@Override
+		protected void compute() {
+			if(end - start <= taskSize) {
+				action.run(start, end);
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new RangeTask(action, start, middle, taskSize), new RangeTask(action, middle, end, taskSize));
+			}
+		}
+	}
+
+	/** Removes entities that are below the world or are flagged for deletion **/
+	private void removeEntities() {
+		var entities = this.entities;
+		for(int i = 0; i < entities.size();) {
+			Entity e = entities.get(i);
+			if(onRemove != null && e.getPositionY() < 0 || e.getShouldDelete()) {
+				removeAt(i);
+				onRemove.accept(e);
+			} else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Brings the spatial index up to date with entities moved since the last update and rebuilds the grid of
+	 * entities that interact with entities. An entity is only moved while it is being updated, so when entity
+	 * {@code i} is checked against entities later in the list their grid cells are still accurate.
+	 */
+	private void prepareBroadPhase(Entity[] entities, EntityGrid.Entry[] entries, int size) {
+		interactingGrid.reset(interactingCount);
+		int interacting = 0;
+		for(int i = 0; i < size; i++) {
+			Entity e = entities[i];
+			if(!entries[i].sleeping) entityGrid.move(entries[i]);
+			if(e.interactsWithEntities()) {
+				if(interacting == interactingEntries.length) {
+					interactingEntries = grow(interactingEntries, interacting + 1);
 				}
+				EntityGrid.Entry interactingEntry = interactingEntries[interacting++];
+				interactingEntry.entity = e;
+				interactingEntry.order = i;
+				interactingGrid.insert(interactingEntry);
 			}
 		}
-		isEntitiesUnmodifiable = false;
+		for(int i = interacting; i < interactingEntries.length && interactingEntries[i].entity != null; i++) {
+			interactingEntries[i].entity = null;
+		}
+		interactingCount = interacting;
+	}
+
+	private static EntityGrid.Entry[] grow(EntityGrid.Entry[] entries, int minLength) {
+		int length = entries.length;
+		entries = Arrays.copyOf(entries, Math.max(minLength, length * 2));
+		for(int i = length; i < entries.length; i++) {
+			entries[i] = new EntityGrid.Entry();
+		}
+		return entries;
+	}
+
+	/**
+	 * Resolves collisions between {@code e} and every entity after it in the entity list, in list order.
+	 * Only pairs where at least one entity interacts with entities are considered, so non-interacting
+	 * entities only search the grid of interacting entities. If resolving a collision moves {@code e}, the
+	 * grid is searched again from the last checked entity onward using the new position.
+	 */
+	private void resolveEntityCollisions(Entity e, int order, long nanoseconds) {
+		EntityGrid grid;
+		if(e.interactsWithEntities()) {
+			grid = entityGrid;
+		} else if(interactingCount > 0) {
+			grid = interactingGrid;
+		} else {
+			return;
+		}
+
+		int last = order;
+		boolean moved;
+		do {
+			float posX = e.getPositionX(), posY = e.getPositionY();
+			float halfWidth = e.getWidth() * 0.5f, halfHeight = e.getHeight() * 0.5f;
+			int count = grid.query(posX - halfWidth, posY - halfHeight, posX + halfWidth, posY + halfHeight, last, updateResults);
+			updateResults.sort();
+			moved = false;
+			for(int i = 0; i < count && !moved; i++) {
+				EntityGrid.Entry other = updateResults.get(i);
+				last = other.order;
+				if(resolveEntityCollision(e, other.entity, nanoseconds)) {
+					wake(entities.entry(order));
+					wake(entities.entry(last));
+				}
+				moved = e.getPositionX() != posX || e.getPositionY() != posY;
+			}
+		} while(moved);
+		updateResults.clear();
 	}
 
 	private float resolveBlockCollisions(Entity e, long nanoseconds) {
@@ -319,11 +926,14 @@ public class World implements Transportable, Iterable<Entity> {
 		//TODO is there redundancy between this and resolveBlockCollision
 		//System.out.println(leftBound + ", " + bottomBound + ", " + rightBound + ", " + topBound);
 		for(int row = bottomBound; row <= topBound; row++) {
-			for(int column = leftBound; column <= rightBound; column++) {
-				Block block = blocks.get(LAYER_MAIN, column, row);
-				if(block != null && block.isSolid()) {
+			//visit only the solid cells in the row, 64 columns at a time, from left to right
+			for(int start = leftBound; start <= rightBound; start += 64) {
+				long solid = blocks.solidRow(LAYER_MAIN, start, row, Math.min(64, rightBound - start + 1));
+				while(solid != 0) {
+					int column = start + Long.numberOfTrailingZeros(solid);
+					solid &= solid - 1;
 					//TODO re-add other block checks to see if surface is smooth
-					float f = resolveBlockCollision(e, block, column, row, nanoseconds);
+					float f = resolveBlockCollision(e, blocks.getUnchecked(LAYER_MAIN, column, row), column, row, nanoseconds);
 					if(f != 0) {
 						friction += f;
 						frictionCollisions++;
@@ -340,8 +950,9 @@ public class World implements Transportable, Iterable<Entity> {
 	 * @param e the entity to be resolved
 	 * @param o the entity to check collision with
 	 * @param nanoseconds the amount of time that the resolution should simulate
+	 * @return true if the entities collided
 	 */
-	private void resolveEntityCollision(Entity e, Entity o, long nanoseconds) {
+	private boolean resolveEntityCollision(Entity e, Entity o, long nanoseconds) {
 		if(e.interactsWithEntities() || o.interactsWithEntities()) {
 			//TODO use momentum (mass * velocity) to determine which one moves
 			float width = 0.5f * (e.getWidth() + o.getWidth());
@@ -380,12 +991,14 @@ public class World implements Transportable, Iterable<Entity> {
 				        }
 				    }
 				}
+				return true;
 			}
 		}
+		return false;
 	}
 
 	private boolean isOpen(int x, int y) {
-		return !(blocks.isValid(LAYER_MAIN, x, y) && blocks.isBlock(LAYER_MAIN, x, y) && blocks.get(LAYER_MAIN, x, y).isSolid());
+		return !blocks.isSolid(LAYER_MAIN, x, y);
 	}
 
 	/** Returns true if entity is grounded **/
@@ -432,4 +1045,4 @@ public class World implements Transportable, Iterable<Entity> {
 		return 0;
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
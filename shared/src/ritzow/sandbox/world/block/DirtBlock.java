@@ -1,7 +1,6 @@
 package ritzow.sandbox.world.block;
 
-import ritzow.sandbox.data.Bytes;
-import ritzow.sandbox.data.Serializer;
+import ritzow.sandbox.data.TransportableDataWriter;
 
 public class DirtBlock implements Block {
 
@@ -25,7 +24,5 @@ public class DirtBlock implements Block {
 	}
 
 	@Override
-	public byte[] getBytes(Serializer ser) {
-		return Bytes.EMPTY_BYTE_ARRAY;
-	}
+	public void write(TransportableDataWriter out) {}
 }
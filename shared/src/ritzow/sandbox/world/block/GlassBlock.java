@@ -1,6 +1,6 @@
 package ritzow.sandbox.world.block;
 
-import ritzow.sandbox.data.Serializer;
+import ritzow.sandbox.data.TransportableDataWriter;
 
 public class GlassBlock implements Block {
 	public static final GlassBlock INSTANCE = new GlassBlock();
@@ -23,7 +23,5 @@ public class GlassBlock implements Block {
 	}
 
 	@Override
-	public byte[] getBytes(Serializer ser) {
-		return new byte[0];
-	}
+	public void write(TransportableDataWriter out) {}
 }
@@ -1,9 +1,8 @@
 package ritzow.sandbox.world.entity;
 
-import ritzow.sandbox.data.Bytes;
 import ritzow.sandbox.data.DataReader;
-import ritzow.sandbox.data.Serializer;
 import ritzow.sandbox.data.Transportable;
+import ritzow.sandbox.data.TransportableDataWriter;
 import ritzow.sandbox.world.World;
 import ritzow.sandbox.world.block.Block;
 import ritzow.sandbox.world.component.Positional;
@@ -11,12 +10,35 @@ import ritzow.sandbox.world.component.Positional;
 public abstract class Entity implements Transportable, Positional {
 	protected final int entityID;
 
+	/**
+	 * Entity state used while the entity is not attached to an {@link EntityStore}. Subclasses should use the
+	 * accessors, which read and write the store while the entity is attached.
+	 */
 	protected float
 		positionX,
 		positionY,
 		velocityX,
 		velocityY;
 
+	/**
+	 * The store that holds the entity's state and its slot in that store, or null. Accessors read it once, since
+	 * a world being saved in the background reads entities while they are attached and detached.
+	 */
+	EntityStore store;
+	int slot;
+
+	/** The position of the entity at the start of the last world update, used to interpolate rendering **/
+	private float previousX, previousY;
+
+	/** Notified when the entity's position is set, or null **/
+	private MoveListener moveListener;
+
+	/** Receives entities whose position has been set, used by a world to keep its spatial index up to date **/
+	@FunctionalInterface
+	public interface MoveListener {
+		void moved(Entity e);
+	}
+
 	/**
 	 * @param world The world the entity belongs to.
 	 * @param nanoseconds The amount of time to update the entity.
@@ -46,14 +68,12 @@ public abstract class Entity implements Transportable, Positional {
 	}
 
 	@Override
-	public byte[] getBytes(Serializer ser) {
-		byte[] data = new byte[20];
-		Bytes.putInteger(data, 0, entityID);
-		Bytes.putFloat(data, 4, positionX);
-		Bytes.putFloat(data, 8, positionY);
-		Bytes.putFloat(data, 12, velocityX);
-		Bytes.putFloat(data, 16, velocityY);
-		return data;
+	public void write(TransportableDataWriter out) {
+		out.writeInteger(entityID);
+		out.writeFloat(getPositionX());
+		out.writeFloat(getPositionY());
+		out.writeFloat(getVelocityX());
+		out.writeFloat(getVelocityY());
 	}
 
 	public final int getID() {
@@ -89,6 +109,11 @@ public abstract class Entity implements Transportable, Positional {
 	/** @return true if the entity should collide with solid blocks rather than fall through them **/
 	public abstract boolean collidesWithBlocks();
 
+	/** @return true if the world can stop updating the entity while it is at rest **/
+	public boolean canSleep() {
+		return false;
+	}
+
 	/** @return true if the entity should collide with other entities rather than passing through them **/
 	public abstract boolean collidesWithEntities();
 
@@ -110,51 +135,86 @@ public abstract class Entity implements Transportable, Positional {
 	/** @return the horizontal position of the of the entity in the world **/
 	@Override
 	public final float getPositionX() {
-		return positionX;
+		EntityStore store = this.store;
+		return store == null ? positionX : store.positionX[slot];
 	}
 
 	/** @return the vertical position of the of the entity in the world **/
 	@Override
 	public final float getPositionY() {
-		return positionY;
+		EntityStore store = this.store;
+		return store == null ? positionY : store.positionY[slot];
 	}
 
 	/** @return the distance the entity should move in the horizontal direction each game update **/
 	public final float getVelocityX() {
-		return velocityX;
+		EntityStore store = this.store;
+		return store == null ? velocityX : store.velocityX[slot];
 	}
 
 	/** @return the distance the entity should move in the vertical direction each game update **/
 	public final float getVelocityY() {
-		return velocityY;
+		EntityStore store = this.store;
+		return store == null ? velocityY : store.velocityY[slot];
+	}
+
+	/**
+	 * Interpolates between the position of the entity before and after the last world update.
+	 * @param interpolation the fraction of the way from the previous to the current position.
+	 * @return the interpolated horizontal position.
+	 */
+	public final float getInterpolatedPositionX(float interpolation) {
+		return Math.fma(getPositionX() - previousX, interpolation, previousX);
+	}
+
+	/** @see #getInterpolatedPositionX(float) **/
+	public final float getInterpolatedPositionY(float interpolation) {
+		return Math.fma(getPositionY() - previousY, interpolation, previousY);
+	}
+
+	/** Sets the previous position of the entity to its current position, so interpolation starts from there **/
+	public final void savePosition() {
+		previousX = getPositionX();
+		previousY = getPositionY();
+	}
+
+	/** Sets the listener notified by {@link #setPositionX(float)} and {@link #setPositionY(float)}, or null for none **/
+	public final void setMoveListener(MoveListener listener) {
+		this.moveListener = listener;
 	}
 
 	public final void setPositionX(float positionX) {
-		this.positionX = positionX;
+		if(store == null) this.positionX = positionX;
+		else store.positionX[slot] = positionX;
+		if(moveListener != null) moveListener.moved(this);
 	}
 
 	public final void setPositionY(float positionY) {
-		this.positionY = positionY;
+		if(store == null) this.positionY = positionY;
+		else store.positionY[slot] = positionY;
+		if(moveListener != null) moveListener.moved(this);
 	}
 
 	public final void setVelocityX(float velocityX) {
-		this.velocityX = velocityX;
+		if(store == null) this.velocityX = velocityX;
+		else store.velocityX[slot] = velocityX;
 	}
 
 	public final void setVelocityY(float velocityY) {
-		this.velocityY = velocityY;
+		if(store == null) this.velocityY = velocityY;
+		else store.velocityY[slot] = velocityY;
 	}
 
 	@Override
 	public String toString() {
 		return new StringBuilder()
 			.append("positionX = ")
-			.append(positionX)
+			.append(getPositionX())
 			.append(", positionY = ")
-			.append(positionY)
+			.append(getPositionY())
 			.append(", velocityX = ")
-			.append(velocityX)
+			.append(getVelocityX())
 			.append(", velocityY = ")
-			.append(velocityY).toString();
+			.append(getVelocityY()).toString();
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
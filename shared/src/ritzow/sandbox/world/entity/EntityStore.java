@@ -0,0 +1,121 @@
+package ritzow.sandbox.world.entity;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Stores the position and velocity of entities in parallel primitive arrays indexed by a dense slot,
+ * so that simulation passes over every entity read memory sequentially and can be vectorized by the JIT.
+ * While an entity is attached, its position and velocity accessors read and write the store. Removing an
+ * entity moves the last entity into its slot.
+ * @author Solomon Ritzow
+ */
+public final class EntityStore {
+	private static final int INITIAL_CAPACITY = 64;
+
+	float[] positionX, positionY, velocityX, velocityY;
+	private Entity[] entities;
+	private int size;
+
+	public EntityStore() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public EntityStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		positionX = new float[capacity];
+		positionY = new float[capacity];
+		velocityX = new float[capacity];
+		velocityY = new float[capacity];
+		entities = new Entity[capacity];
+	}
+
+	/** @return the number of entities in the store **/
+	public int size() {
+		return size;
+	}
+
+	/** Moves the state of {@code e} into the store, after which its accessors use the store **/
+	public void attach(Entity e) {
+		if(e.store != null)
+			throw new IllegalStateException("entity " + e.getID() + " already belongs to a store");
+		if(size == entities.length) {
+			grow();
+		}
+		int slot = size++;
+		positionX[slot] = e.positionX;
+		positionY[slot] = e.positionY;
+		velocityX[slot] = e.velocityX;
+		velocityY[slot] = e.velocityY;
+		entities[slot] = e;
+		e.slot = slot;
+		e.store = this;
+	}
+
+	/** Copies the state of {@code e} back into the entity and removes it from the store **/
+	public void detach(Entity e) {
+		if(e.store != this)
+			throw new IllegalArgumentException("entity " + e.getID() + " does not belong to this store");
+		int slot = e.slot;
+		e.positionX = positionX[slot];
+		e.positionY = positionY[slot];
+		e.velocityX = velocityX[slot];
+		e.velocityY = velocityY[slot];
+		e.store = null;
+		int last = --size;
+		if(slot != last) {
+			positionX[slot] = positionX[last];
+			positionY[slot] = positionY[last];
+			velocityX[slot] = velocityX[last];
+			velocityY[slot] = velocityY[last];
+			Entity moved = entities[slot] = entities[last];
+			moved.slot = slot;
+		}
+		entities[last] = null;
+	}
+
+	/** Detaches every entity in the store **/
+	public void clear() {
+		while(size > 0) {
+			detach(entities[size - 1]);
+		}
+	}
+
+	private void grow() {
+		int capacity = entities.length * 2;
+		positionX = Arrays.copyOf(positionX, capacity);
+		positionY = Arrays.copyOf(positionY, capacity);
+		velocityX = Arrays.copyOf(velocityX, capacity);
+		velocityY = Arrays.copyOf(velocityY, capacity);
+		entities = Arrays.copyOf(entities, capacity);
+	}
+
+	/**
+	 * Applies velocity and a constant downward acceleration to every entity in the store.
+	 * Computes the same values as integrating each entity individually. The loop has no
+	 * branches or calls other than {@link Math#fma(float, float, float)}, which allows it to be
+	 * compiled to vector instructions.
+	 * @param nanoseconds the amount of time to simulate.
+	 * @param gravity the downward acceleration in units per nanosecond squared.
+	 */
+	public void integrate(long nanoseconds, float gravity) {
+		integrate(0, size, nanoseconds, gravity);
+	}
+
+	/**
+	 * Integrates the entities in slots {@code start} (inclusive) to {@code end} (exclusive), different
+	 * ranges of slots can be integrated concurrently.
+	 * @see #integrate(long, float)
+	 */
+	public void integrate(int start, int end, long nanoseconds, float gravity) {
+		Objects.checkFromToIndex(start, end, size);
+		float time = nanoseconds, acceleration = -gravity;
+		float[] positionX = this.positionX, positionY = this.positionY;
+		float[] velocityX = this.velocityX, velocityY = this.velocityY;
+		for(int slot = start; slot < end; slot++) {
+			positionX[slot] = Math.fma(velocityX[slot], time, positionX[slot]);
+			float velocity = velocityY[slot] = Math.fma(acceleration, time, velocityY[slot]);
+			positionY[slot] = Math.fma(velocity, time, positionY[slot]);
+		}
+	}
+}
@@ -1,8 +1,7 @@
 package ritzow.sandbox.world.entity;
 
-import ritzow.sandbox.data.Bytes;
-import ritzow.sandbox.data.Serializer;
 import ritzow.sandbox.data.TransportableDataReader;
+import ritzow.sandbox.data.TransportableDataWriter;
 import ritzow.sandbox.world.item.Item;
 
 public class ItemEntity<ITEM extends Item> extends Entity {
@@ -26,8 +25,9 @@ public class ItemEntity<ITEM extends Item> extends Entity {
 	}
 
 	@Override
-	public byte[] getBytes(Serializer ser) {
-		return Bytes.concatenate(super.getBytes(ser), ser.serialize(item));
+	public void write(TransportableDataWriter out) {
+		super.write(out);
+		out.writeObject(item);
 	}
 
 	public ITEM getItem() {
@@ -49,6 +49,11 @@ public class ItemEntity<ITEM extends Item> extends Entity {
 		return true;
 	}
 
+	@Override
+	public boolean canSleep() {
+		return true;
+	}
+
 	@Override
 	public boolean collidesWithEntities() {
 		return false;
@@ -0,0 +1,22 @@
+package ritzow.sandbox.world.generator;
+
+import ritzow.sandbox.world.Chunk;
+
+/**
+ * Generates the blocks of a world one {@link Chunk} at a time, so that a world can be generated as it is explored
+ * instead of all at once. Generation must be deterministic: the blocks placed in a chunk may only depend on the
+ * chunk's position, its number of layers, and the seed. Implementations must allow multiple chunks to be generated
+ * concurrently.
+ * @author Solomon Ritzow
+ */
+public interface ChunkGenerator {
+	/** @return the height in blocks of the worlds generated, blocks are never placed at or above this height **/
+	int getHeight();
+
+	/**
+	 * Places the blocks of a chunk.
+	 * @param chunk an empty chunk, whose position determines which blocks are generated
+	 * @param seed the seed of the world the chunk belongs to
+	 */
+	void generate(Chunk chunk, long seed);
+}
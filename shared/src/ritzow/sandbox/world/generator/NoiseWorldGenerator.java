@@ -0,0 +1,263 @@
+package ritzow.sandbox.world.generator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.Chunk;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.block.Block;
+import ritzow.sandbox.world.block.DirtBlock;
+import ritzow.sandbox.world.block.GlassBlock;
+import ritzow.sandbox.world.block.GrassBlock;
+
+/**
+ * Generates terrain from seeded gradient noise: a surface of rolling hills covered in grass over a layer of dirt of
+ * varying depth, caves carved out of the main layer, and deposits of glass deep underground. Every block only
+ * depends on its position and the seed, so chunks can be generated in any order on any number of threads, and
+ * {@link #generate()} generates columns of chunks in parallel with the same result as generating them one at a time.
+ * @author Solomon Ritzow
+ */
+public class NoiseWorldGenerator implements WorldGenerator, ChunkGenerator {
+
+	private static final int
+		DEFAULT_WORLD_WIDTH = 200,
+		DEFAULT_WORLD_HEIGHT = 200,
+		DEFAULT_SURFACE_HEIGHT = 140,
+		DEFAULT_TERRAIN_AMPLITUDE = 30,
+		TERRAIN_OCTAVES = 4,
+		CAVE_OCTAVES = 3;
+	private static final double
+		TERRAIN_FREQUENCY = 1 / 96.0,
+		CAVE_FREQUENCY = 1 / 24.0,
+		DIRT_FREQUENCY = 1 / 16.0,
+		DEPOSIT_FREQUENCY = 1 / 6.0,
+		DEFAULT_CAVE_WIDTH = 0.035,
+		DEPOSIT_THRESHOLD = 0.42;
+	/** Different noise for each feature, so that caves don't follow the shape of the terrain **/
+	private static final long TERRAIN = 0x7E44A1L, CAVES = 0xCA7E5L, DIRT = 0xD1475L, DEPOSITS = 0xDE9051L;
+
+	private int width, height, surfaceHeight, terrainAmplitude, parallelism;
+	private double caveWidth;
+	private long seed;
+
+	public static NoiseWorldGenerator builder() {
+		return new NoiseWorldGenerator();
+	}
+
+	private NoiseWorldGenerator() {
+		this.width = DEFAULT_WORLD_WIDTH;
+		this.height = DEFAULT_WORLD_HEIGHT;
+		this.surfaceHeight = DEFAULT_SURFACE_HEIGHT;
+		this.terrainAmplitude = DEFAULT_TERRAIN_AMPLITUDE;
+		this.caveWidth = DEFAULT_CAVE_WIDTH;
+		this.parallelism = Runtime.getRuntime().availableProcessors();
+	}
+
+	public NoiseWorldGenerator width(int width) {
+		this.width = width;
+		return this;
+	}
+
+	/** @param height the height of the world, the terrain is cut off if it is higher **/
+	public NoiseWorldGenerator height(int height) {
+		this.height = height;
+		return this;
+	}
+
+	/** @param surfaceHeight the average height of the surface of the terrain **/
+	public NoiseWorldGenerator surfaceHeight(int surfaceHeight) {
+		this.surfaceHeight = surfaceHeight;
+		return this;
+	}
+
+	/** @param terrainAmplitude the most the surface can be above or below its average height **/
+	public NoiseWorldGenerator terrainAmplitude(int terrainAmplitude) {
+		this.terrainAmplitude = terrainAmplitude;
+		return this;
+	}
+
+	/** @param caveWidth the width of cave tunnels relative to the noise they follow, 0 for no caves **/
+	public NoiseWorldGenerator caveWidth(double caveWidth) {
+		this.caveWidth = caveWidth;
+		return this;
+	}
+
+	/** @param seed the seed used by {@link #generate()} **/
+	public NoiseWorldGenerator seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/** @param parallelism the number of threads used by {@link #generate()}, 1 to generate on the calling thread **/
+	public NoiseWorldGenerator parallelism(int parallelism) {
+		if(parallelism <= 0)
+			throw new IllegalArgumentException("parallelism must be positive");
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public World generate() {
+		World world = new World(width, height);
+		BlockGrid blocks = world.getBlocks();
+		int chunksHigh = blocks.getChunksHigh(), layers = blocks.getLayers();
+		Chunk[][] columns = new Chunk[blocks.getChunksWide()][];
+		if(parallelism == 1) {
+			for(int chunkX = 0; chunkX < columns.length; chunkX++) {
+				columns[chunkX] = generateColumn(chunkX, chunksHigh, layers);
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				pool.submit(() -> IntStream.range(0, columns.length).parallel()
+					.forEach(chunkX -> columns[chunkX] = generateColumn(chunkX, chunksHigh, layers))).join();
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		//the grid isn't thread safe, so chunks are added on the calling thread
+		for(Chunk[] column : columns) {
+			for(Chunk chunk : column) {
+				if(!chunk.isEmpty()) blocks.setChunk(chunk);
+			}
+		}
+		return world;
+	}
+
+	private Chunk[] generateColumn(int chunkX, int chunksHigh, int layers) {
+		Chunk[] column = new Chunk[chunksHigh];
+		for(int chunkY = 0; chunkY < chunksHigh; chunkY++) {
+			generate(column[chunkY] = new Chunk(chunkX, chunkY, layers), seed);
+		}
+		return column;
+	}
+
+	@Override
+	public void generate(Chunk chunk, long seed) {
+		int left = chunk.getChunkX() << Chunk.SHIFT, bottom = chunk.getChunkY() << Chunk.SHIFT;
+		int top = Math.min(bottom + Chunk.SIZE, height);
+		if(bottom >= Math.min(height, surfaceHeight + terrainAmplitude + 1)) return;
+		for(int column = 0; column < Chunk.SIZE; column++) {
+			int x = left + column;
+			int surface = surface(x, seed);
+			int dirtDepth = 3 + (int)(4 * (1 + noise(seed ^ DIRT, x * DIRT_FREQUENCY)));
+			for(int y = bottom, end = Math.min(surface + 1, top); y < end; y++) {
+				chunk.set(World.LAYER_BACKGROUND, column, y - bottom, DirtBlock.INSTANCE);
+				Block block = mainBlock(seed, x, y, surface, dirtDepth);
+				if(block != null) chunk.set(World.LAYER_MAIN, column, y - bottom, block);
+			}
+		}
+	}
+
+	/** @return the block in the main layer at a position at or below the surface, or null in a cave **/
+	private Block mainBlock(long seed, int x, int y, int surface, int dirtDepth) {
+		if(y == surface) {
+			return GrassBlock.INSTANCE;
+		} else if(y < surface - dirtDepth && isCave(seed, x, y)) {
+			return null;
+		} else if(y < surfaceHeight / 2 && noise(seed ^ DEPOSITS, x * DEPOSIT_FREQUENCY, y * DEPOSIT_FREQUENCY) > DEPOSIT_THRESHOLD) {
+			return GlassBlock.INSTANCE;
+		} else {
+			return DirtBlock.INSTANCE;
+		}
+	}
+
+	/** @return the height of the grass at a column **/
+	private int surface(int x, long seed) {
+		return surfaceHeight + (int)Math.round(terrainAmplitude * fractal(seed ^ TERRAIN, x * TERRAIN_FREQUENCY, TERRAIN_OCTAVES));
+	}
+
+	/** @return true if the main layer is empty at a position below the dirt, caves follow the zeroes of the noise **/
+	private boolean isCave(long seed, int x, int y) {
+		//caves don't reach the bottom of the world
+		return y > 1 && Math.abs(fractal(seed ^ CAVES, x * CAVE_FREQUENCY, y * CAVE_FREQUENCY, CAVE_OCTAVES)) < caveWidth;
+	}
+
+	/** @return the sum of octaves of one dimensional noise of halving amplitude and doubling frequency, from -1 to 1 **/
+	private static double fractal(long seed, double x, int octaves) {
+		double sum = 0, amplitude = 1, total = 0;
+		for(int octave = 0; octave < octaves; octave++) {
+			sum += amplitude * noise(seed + octave, x);
+			total += amplitude;
+			amplitude *= 0.5;
+			x *= 2;
+		}
+		return sum / total;
+	}
+
+	/** @return the sum of octaves of two dimensional noise of halving amplitude and doubling frequency, from -1 to 1 **/
+	private static double fractal(long seed, double x, double y, int octaves) {
+		double sum = 0, amplitude = 1, total = 0;
+		for(int octave = 0; octave < octaves; octave++) {
+			sum += amplitude * noise(seed + octave, x, y);
+			total += amplitude;
+			amplitude *= 0.5;
+			x *= 2;
+			y *= 2;
+		}
+		return sum / total;
+	}
+
+	/** @return one dimensional gradient noise, from -1 to 1, which is 0 at every integer **/
+	private static double noise(long seed, double x) {
+		long cell = (long)Math.floor(x);
+		double t = x - cell;
+		double left = gradient(hash(seed, cell, 0)) * t, right = gradient(hash(seed, cell + 1, 0)) * (t - 1);
+		return 2 * lerp(fade(t), left, right);
+	}
+
+	/** @return two dimensional gradient noise, from about -1 to 1, which is 0 at every integer position **/
+	private static double noise(long seed, double x, double y) {
+		long cellX = (long)Math.floor(x), cellY = (long)Math.floor(y);
+		double tx = x - cellX, ty = y - cellY;
+		double bottom = lerp(fade(tx),
+			dot(hash(seed, cellX, cellY), tx, ty),
+			dot(hash(seed, cellX + 1, cellY), tx - 1, ty));
+		double top = lerp(fade(tx),
+			dot(hash(seed, cellX, cellY + 1), tx, ty - 1),
+			dot(hash(seed, cellX + 1, cellY + 1), tx - 1, ty - 1));
+		return lerp(fade(ty), bottom, top);
+	}
+
+	/** @return a gradient from -1 to 1 **/
+	private static double gradient(long hash) {
+		return (hash >>> 11) * 0x1.0p-52 - 1;
+	}
+
+	/** @return the dot product of one of eight gradients of length 1 with a position relative to a lattice point **/
+	private static double dot(long hash, double x, double y) {
+		final double diagonal = 0.7071067811865476;
+		return switch((int)(hash >>> 61)) {
+			case 0 -> x;
+			case 1 -> -x;
+			case 2 -> y;
+			case 3 -> -y;
+			case 4 -> diagonal * (x + y);
+			case 5 -> diagonal * (x - y);
+			case 6 -> diagonal * (-x + y);
+			default -> diagonal * (-x - y);
+		};
+	}
+
+	private static double fade(double t) {
+		return t * t * t * (t * (t * 6 - 15) + 10);
+	}
+
+	private static double lerp(double t, double a, double b) {
+		return a + t * (b - a);
+	}
+
+	/** @return well distributed bits that only depend on the seed and a lattice point **/
+	private static long hash(long seed, long x, long y) {
+		long hash = seed ^ x * 0x9E3779B97F4A7C15L ^ y * 0xC2B2AE3D27D4EB4FL;
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+}
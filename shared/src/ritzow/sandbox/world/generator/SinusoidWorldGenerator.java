@@ -1,11 +1,17 @@
 package ritzow.sandbox.world.generator;
 
 import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.Chunk;
 import ritzow.sandbox.world.World;
 import ritzow.sandbox.world.block.DirtBlock;
 import ritzow.sandbox.world.block.GrassBlock;
 
-public class SinusoidWorldGenerator implements WorldGenerator {
+/**
+ * Generates dirt terrain whose surface is a sine wave covered in grass. The terrain has no randomness, so the
+ * seed passed to {@link #generate(Chunk, long)} is ignored and the width is only used by {@link #generate()}.
+ * @author Solomon Ritzow
+ */
+public class SinusoidWorldGenerator implements WorldGenerator, ChunkGenerator {
 
 	private static final int
 		DEFAULT_WORLD_WIDTH = 200,
@@ -55,22 +61,42 @@ public class SinusoidWorldGenerator implements WorldGenerator {
 		return this;
 	}
 
+	@Override
+	public int getHeight() {
+		return baseHeight + terrainAmplitude + skyHeight;
+	}
+
 	@Override
 	public World generate() {
-		World world = new World(width, baseHeight + terrainAmplitude + skyHeight);
+		World world = new World(width, getHeight());
 		BlockGrid blocks = world.getBlocks();
+		for(int chunkX = 0; chunkX < blocks.getChunksWide(); chunkX++) {
+			for(int chunkY = 0; chunkY < blocks.getChunksHigh(); chunkY++) {
+				Chunk chunk = new Chunk(chunkX, chunkY, blocks.getLayers());
+				generate(chunk, 0);
+				if(!chunk.isEmpty()) blocks.setChunk(chunk);
+			}
+		}
+		return world;
+	}
+
+	@Override
+	public void generate(Chunk chunk, long seed) {
+		int left = chunk.getChunkX() * Chunk.SIZE, bottom = chunk.getChunkY() * Chunk.SIZE, top = bottom + Chunk.SIZE;
 		int midpoint = terrainAmplitude/2;
 		int base = baseHeight - 1;
-		blocks.fill(DirtBlock.INSTANCE, 0, 0, blocks.getWidth(), baseHeight);
-		for(int column = 0; column < width; ++column) {
-			int max = base + midpoint + Math.round(midpoint * (float)Math.sin(column * frequency));
-			for(int row = base; row < max; ++row) {
-				blocks.set(World.LAYER_MAIN, column, row, DirtBlock.INSTANCE);
-				blocks.set(World.LAYER_BACKGROUND, column, row, DirtBlock.INSTANCE);
+		if(bottom < baseHeight)
+			chunk.fill(DirtBlock.INSTANCE, 0, 0, Chunk.SIZE, Math.min(Chunk.SIZE, baseHeight - bottom));
+		for(int column = 0; column < Chunk.SIZE; ++column) {
+			int max = base + midpoint + Math.round(midpoint * (float)Math.sin((left + column) * frequency));
+			for(int row = Math.max(base, bottom), end = Math.min(max, top); row < end; ++row) {
+				chunk.set(World.LAYER_MAIN, column, row - bottom, DirtBlock.INSTANCE);
+				chunk.set(World.LAYER_BACKGROUND, column, row - bottom, DirtBlock.INSTANCE);
+			}
+			if(max >= bottom && max < top) {
+				chunk.set(World.LAYER_MAIN, column, max - bottom, GrassBlock.INSTANCE);
+				chunk.set(World.LAYER_BACKGROUND, column, max - bottom, DirtBlock.INSTANCE);
 			}
-			blocks.set(World.LAYER_MAIN, column, max, GrassBlock.INSTANCE);
-			blocks.set(World.LAYER_BACKGROUND, column, max, DirtBlock.INSTANCE);
 		}
-		return world;
 	}
 }
@@ -1,8 +1,8 @@
 package ritzow.sandbox.world.item;
 
 import java.util.Objects;
-import ritzow.sandbox.data.Serializer;
 import ritzow.sandbox.data.TransportableDataReader;
+import ritzow.sandbox.data.TransportableDataWriter;
 import ritzow.sandbox.world.block.Block;
 
 public class BlockItem extends Item {
@@ -17,8 +17,8 @@ public class BlockItem extends Item {
 	}
 	
 	@Override
-	public byte[] getBytes(Serializer ser) {
-		return ser.serialize(block);
+	public void write(TransportableDataWriter out) {
+		out.writeObject(block);
 	}
 	
 	public Block getBlock() {
@@ -0,0 +1,221 @@
+package ritzow.sandbox.world.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.Chunk;
+import ritzow.sandbox.world.block.Block;
+
+/**
+ * Keeps chunks unloaded from a {@link BlockGrid} outside of the Java heap, so that very large worlds can keep only
+ * the chunks near players as objects for the garbage collector to trace. Every cell is stored as a one byte block
+ * ID in direct buffers allocated a page of chunks at a time, either from native memory or mapped from a file so that
+ * the operating system can write pages of cold chunks to disk and read them back when they are accessed. Positions
+ * are computed with long arithmetic, so the number of cells stored is only limited by the memory or disk space
+ * available. The file is only scratch space for the store while it is open and is not a saved world. Direct and
+ * mapped buffers can't be freed explicitly, so the memory of a closed store is released once its pages are
+ * garbage collected, and native pages count toward the limit set by {@code -XX:MaxDirectMemorySize}.
+ * @author Solomon Ritzow
+ */
+public final class OffHeapChunkStore implements BlockGrid.ChunkStore, Closeable {
+	/** The number of chunks in each page of memory, and its base 2 logarithm **/
+	private static final int PAGE_SHIFT = 10, PAGE_CHUNKS = 1 << PAGE_SHIFT;
+	private static final int CELLS = Chunk.SIZE * Chunk.SIZE, MAX_BLOCK_TYPES = 255;
+
+	private final int layers, chunksHigh;
+	private final int chunkBytes, pageBytes;
+	/** The file pages are mapped from, or null if pages are allocated from native memory **/
+	private final FileChannel file;
+	/** Pages by position, null until a chunk in the page is stored, or null once the store is closed **/
+	private ByteBuffer[] pages;
+	/** One bit per chunk position of each page, set if the chunk has been stored and isn't empty **/
+	private long[][] stored;
+	private int storedCount;
+
+	/** Block IDs start at 1, 0 is an empty cell **/
+	private final Block[] blocks;
+	private final Map<Block, Integer> ids;
+
+	/**
+	 * Creates a store that allocates native memory for its chunks.
+	 * @param layers the number of layers of the grid
+	 * @param chunksHigh the height of the grid in chunks
+	 */
+	public OffHeapChunkStore(int layers, int chunksHigh) {
+		this(layers, chunksHigh, (FileChannel)null);
+	}
+
+	/**
+	 * Creates a store whose chunks are kept in a memory mapped file, which is replaced if it exists and grows as
+	 * chunks are stored.
+	 * @param layers the number of layers of the grid
+	 * @param chunksHigh the height of the grid in chunks
+	 * @param file the file to store chunks in
+	 */
+	public OffHeapChunkStore(int layers, int chunksHigh, Path file) throws IOException {
+		this(layers, chunksHigh, FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+	}
+
+	private OffHeapChunkStore(int layers, int chunksHigh, FileChannel file) {
+		if(layers <= 0 || chunksHigh <= 0)
+			throw new IllegalArgumentException("invalid size " + layers + " layers by " + chunksHigh + " chunks high");
+		if((long)layers * CELLS * PAGE_CHUNKS > Integer.MAX_VALUE)
+			throw new IllegalArgumentException(layers + " layers is too many for a page of chunks");
+		this.layers = layers;
+		this.chunksHigh = chunksHigh;
+		this.chunkBytes = layers * CELLS;
+		this.pageBytes = chunkBytes * PAGE_CHUNKS;
+		this.file = file;
+		this.pages = new ByteBuffer[16];
+		this.stored = new long[pages.length][];
+		this.blocks = new Block[MAX_BLOCK_TYPES + 1];
+		this.ids = new IdentityHashMap<>();
+	}
+
+	private long position(int chunkX, int chunkY) {
+		if(chunkX < 0 || chunkY < 0 || chunkY >= chunksHigh)
+			throw new IndexOutOfBoundsException("chunk " + chunkX + ", " + chunkY + " is outside the store");
+		return (long)chunksHigh * chunkX + chunkY;
+	}
+
+	private boolean isStored(long position) {
+		long index = position >>> PAGE_SHIFT;
+		return index < stored.length && stored[(int)index] != null &&
+			(stored[(int)index][(int)(position & (PAGE_CHUNKS - 1)) >>> 6] & 1L << position) != 0;
+	}
+
+	/** Sets or clears the bit of a stored chunk, whose page must exist **/
+	private void setStored(long position, boolean isStored) {
+		long[] bits = stored[(int)(position >>> PAGE_SHIFT)];
+		int word = (int)(position & (PAGE_CHUNKS - 1)) >>> 6;
+		if(isStored) {
+			bits[word] |= 1L << position;
+			storedCount++;
+		} else {
+			bits[word] &= ~(1L << position);
+			storedCount--;
+		}
+	}
+
+	/** @return the offset of a chunk in its page **/
+	private int offset(long position) {
+		return (int)(position & (PAGE_CHUNKS - 1)) * chunkBytes;
+	}
+
+	private void checkOpen() {
+		if(pages == null)
+			throw new IllegalStateException("the chunk store is closed");
+	}
+
+	/** @return the page containing a chunk position, which is allocated or mapped if it doesn't exist **/
+	private ByteBuffer page(long position) throws IOException {
+		int index = Math.toIntExact(position >>> PAGE_SHIFT);
+		if(index >= pages.length) {
+			pages = Arrays.copyOf(pages, Math.max(index + 1, pages.length * 2));
+			stored = Arrays.copyOf(stored, pages.length);
+		}
+		ByteBuffer page = pages[index];
+		if(page == null) {
+			pages[index] = page = file == null ? ByteBuffer.allocateDirect(pageBytes) :
+				file.map(MapMode.READ_WRITE, (long)index * pageBytes, pageBytes);
+			stored[index] = new long[PAGE_CHUNKS / 64];
+		}
+		return page;
+	}
+
+	private int id(Block block) {
+		Integer id = ids.get(block);
+		if(id == null) {
+			if(ids.size() == MAX_BLOCK_TYPES)
+				throw new IllegalStateException("more than " + MAX_BLOCK_TYPES + " types of blocks stored");
+			ids.put(block, id = ids.size() + 1);
+			blocks[id] = block;
+		}
+		return id;
+	}
+
+	@Override
+	public synchronized void store(int chunkX, int chunkY, Chunk chunk) {
+		checkOpen();
+		long position = position(chunkX, chunkY);
+		if(chunk == null || chunk.isEmpty()) {
+			if(isStored(position)) setStored(position, false);
+			return;
+		}
+		if(chunk.getLayers() != layers)
+			throw new IllegalArgumentException("chunk has " + chunk.getLayers() + " layers instead of " + layers);
+		byte[] cells = new byte[chunkBytes];
+		Block previous = null;
+		int previousID = 0;
+		for(int layer = 0, cell = 0; layer < layers; layer++) {
+			for(int y = 0; y < Chunk.SIZE; y++) {
+				for(int x = 0; x < Chunk.SIZE; x++, cell++) {
+					Block block = chunk.get(layer, x, y);
+					if(block != previous) {
+						previous = block;
+						previousID = block == null ? 0 : id(block);
+					}
+					cells[cell] = (byte)previousID;
+				}
+			}
+		}
+		try {
+			page(position).put(offset(position), cells);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if(!isStored(position)) setStored(position, true);
+	}
+
+	@Override
+	public synchronized Chunk load(int chunkX, int chunkY) {
+		checkOpen();
+		long position = position(chunkX, chunkY);
+		if(!isStored(position)) return null;
+		byte[] cells = new byte[chunkBytes];
+		pages[(int)(position >>> PAGE_SHIFT)].get(offset(position), cells);
+		Chunk chunk = new Chunk(chunkX, chunkY, layers);
+		for(int layer = 0, cell = 0; layer < layers; layer++) {
+			for(int y = 0; y < Chunk.SIZE; y++) {
+				for(int x = 0; x < Chunk.SIZE; x++, cell++) {
+					if(cells[cell] != 0) chunk.set(layer, x, y, blocks[cells[cell] & 0xFF]);
+				}
+			}
+		}
+		return chunk;
+	}
+
+	/** @return the number of non-empty chunks stored **/
+	public synchronized int getChunkCount() {
+		return storedCount;
+	}
+
+	/** @return the bytes of native memory or file space used by the pages of the store **/
+	public synchronized long getMemoryUsage() {
+		return pages == null ? 0 : Arrays.stream(pages).filter(page -> page != null).count() * pageBytes;
+	}
+
+	/** Releases the pages of the store and closes its file, chunks can't be stored or loaded afterwards **/
+	@Override
+	public synchronized void close() throws IOException {
+		pages = null;
+		stored = null;
+		if(file != null) file.close();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "OffHeapChunkStore[" + storedCount + " chunks, " + (getMemoryUsage() >> 20) + " MB"
+			+ (file == null ? "" : ", memory mapped") + "]";
+	}
+}
@@ -0,0 +1,163 @@
+package ritzow.sandbox.world.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A file containing the chunks of a square region of {@link #SIZE} by {@link #SIZE} chunks. The file starts with a
+ * table of the sector offset and length in bytes of every chunk, followed by sectors of {@link #SECTOR_BYTES} bytes
+ * containing independently compressed chunks. Chunks are never overwritten in place: a changed chunk is written to
+ * free sectors, and the table only refers to it once the file has been flushed by {@link #commit()}, so a crash
+ * during a save leaves every chunk with either its old or its new contents. Chunks can be read while another thread
+ * is saving.
+ * @author Solomon Ritzow
+ */
+final class RegionFile implements Closeable {
+	/** The width and height of a region in chunks, and its base 2 logarithm **/
+	static final int SHIFT = 5, SIZE = 1 << SHIFT;
+	/** Compressed chunks are usually a few hundred bytes, so sectors are small to avoid wasting space **/
+	static final int SECTOR_BYTES = 256;
+	private static final int CHUNKS = SIZE * SIZE;
+	private static final int ENTRY_BYTES = 8, HEADER_SECTORS = CHUNKS * ENTRY_BYTES / SECTOR_BYTES;
+
+	private final FileChannel channel;
+	/** The table as of the last commit, and the table including chunks written since **/
+	private final int[] committedOffsets, committedLengths, offsets, lengths;
+	/** Sectors referenced by either table, which can't be written to **/
+	private final BitSet used;
+	private boolean changed;
+
+	RegionFile(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		committedOffsets = new int[CHUNKS];
+		committedLengths = new int[CHUNKS];
+		used = new BitSet();
+		used.set(0, HEADER_SECTORS);
+		long size = channel.size();
+		if(size < (long)HEADER_SECTORS * SECTOR_BYTES) {
+			channel.write(ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES), 0);
+		} else {
+			ByteBuffer header = read(0, HEADER_SECTORS * SECTOR_BYTES);
+			for(int i = 0; i < CHUNKS; i++) {
+				int offset = header.getInt(), length = header.getInt();
+				//ignore entries that point outside the file, which can only be the result of corruption
+				if(length > 0 && offset >= HEADER_SECTORS && (long)offset * SECTOR_BYTES + length <= size) {
+					committedOffsets[i] = offset;
+					committedLengths[i] = length;
+					used.set(offset, offset + sectors(length));
+				}
+			}
+		}
+		offsets = committedOffsets.clone();
+		lengths = committedLengths.clone();
+	}
+
+	/** @return the index in the table of the chunk at a position relative to the bottom left of the region **/
+	static int index(int chunkX, int chunkY) {
+		return (chunkY << SHIFT) | chunkX;
+	}
+
+	private static int sectors(int length) {
+		return (int)(((long)length + SECTOR_BYTES - 1) / SECTOR_BYTES);
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("unexpected end of region file");
+		}
+		return buffer.flip();
+	}
+
+	/** @return the data of a chunk, which only reads the chunk's sectors, or null if there is no chunk there **/
+	synchronized ByteBuffer read(int index) throws IOException {
+		return lengths[index] == 0 ? null : read((long)offsets[index] * SECTOR_BYTES, lengths[index]);
+	}
+
+	/** @return true if the region contains the chunk **/
+	synchronized boolean contains(int index) {
+		return lengths[index] != 0;
+	}
+
+	/** Writes the data of a chunk to unused sectors, the chunk isn't replaced until {@link #commit()} **/
+	synchronized void write(int index, byte[] data) throws IOException {
+		if(data.length == 0)
+			throw new IllegalArgumentException("chunk data can't be empty");
+		release(index);
+		int count = sectors(data.length);
+		int offset = used.nextClearBit(HEADER_SECTORS);
+		while(used.nextSetBit(offset) >= 0 && used.nextSetBit(offset) < offset + count) {
+			offset = used.nextClearBit(used.nextSetBit(offset));
+		}
+		used.set(offset, offset + count);
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		while(buffer.hasRemaining()) {
+			channel.write(buffer, (long)offset * SECTOR_BYTES + buffer.position());
+		}
+		offsets[index] = offset;
+		lengths[index] = data.length;
+		changed = true;
+	}
+
+	/** Removes a chunk from the region once the change is committed **/
+	synchronized void remove(int index) {
+		release(index);
+		offsets[index] = 0;
+		lengths[index] = 0;
+		changed = true;
+	}
+
+	/** Frees the sectors of uncommitted data that is being replaced **/
+	private void release(int index) {
+		if(lengths[index] != 0 && offsets[index] != committedOffsets[index]) {
+			used.clear(offsets[index], offsets[index] + sectors(lengths[index]));
+		}
+	}
+
+	/**
+	 * Flushes the chunks written since the last commit to the storage device, then updates the table to refer to
+	 * them and flushes it. Sectors of replaced chunks can be reused afterwards.
+	 */
+	synchronized void commit() throws IOException {
+		if(!changed) return;
+		channel.force(false);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES);
+		for(int i = 0; i < CHUNKS; i++) {
+			header.putInt(offsets[i]).putInt(lengths[i]);
+		}
+		header.flip();
+		while(header.hasRemaining()) {
+			channel.write(header, header.position());
+		}
+		channel.force(false);
+		for(int i = 0; i < CHUNKS; i++) {
+			if(committedLengths[i] != 0 && (committedOffsets[i] != offsets[i] || lengths[i] == 0)) {
+				used.clear(committedOffsets[i], committedOffsets[i] + sectors(committedLengths[i]));
+			}
+		}
+		System.arraycopy(offsets, 0, committedOffsets, 0, CHUNKS);
+		System.arraycopy(lengths, 0, committedLengths, 0, CHUNKS);
+		//sectors of chunks that weren't replaced are still in use
+		for(int i = 0; i < CHUNKS; i++) {
+			if(lengths[i] != 0) used.set(offsets[i], offsets[i] + sectors(lengths[i]));
+		}
+		changed = false;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "RegionFile[" + Arrays.stream(lengths).filter(length -> length != 0).count() + " chunks]";
+	}
+}
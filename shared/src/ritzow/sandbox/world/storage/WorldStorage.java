@@ -0,0 +1,365 @@
+package ritzow.sandbox.world.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import ritzow.sandbox.data.Bytes;
+import ritzow.sandbox.data.SerializerReaderWriter;
+import ritzow.sandbox.data.TransportableDataReader;
+import ritzow.sandbox.world.BlockGrid;
+import ritzow.sandbox.world.Chunk;
+import ritzow.sandbox.world.World;
+import ritzow.sandbox.world.entity.Entity;
+
+/**
+ * Saves and loads a world as a directory containing a level file, with the size of the world, its seed, and its
+ * entities, and a region directory of {@link RegionFile region files} containing its chunks. Saving the world that
+ * was last loaded or saved only writes the chunks marked dirty in its {@link BlockGrid} and then replaces the level
+ * file, and chunks can be loaded individually without reading the rest of the world. A world can also be saved in
+ * two steps: {@link #snapshot} captures the changes to the world, which only takes time proportional to the number of
+ * changed chunks plus copying the position and velocity of each entity, and then {@link #save(Snapshot)} serializes
+ * and writes them, which can be done on another thread
+ * while the world keeps updating.
+ * @author Solomon Ritzow
+ */
+public final class WorldStorage implements Closeable {
+	private static final String LEVEL_FILE = "level.dat", REGION_DIRECTORY = "region";
+	private static final int MAGIC = 0x53324457, VERSION = 1; //"S2DW"
+
+	private final Path directory, regionDirectory;
+	private final SerializerReaderWriter serializer;
+	/** Open region files by {@link #regionKey(int, int)} **/
+	private final Map<Long, RegionFile> regions;
+	/** The world whose unchanged chunks are already stored, or are captured by a snapshot being saved **/
+	private volatile World world;
+	/** The number of snapshots that haven't been saved yet **/
+	private final AtomicInteger unsaved;
+	private long seed;
+
+	/** The changed chunks, entities, and size of a world at the time {@link #snapshot} was called **/
+	public static final class Snapshot {
+		/** Chunks that changed, null for chunks that became empty, and the positions of the null chunks **/
+		private final List<Chunk> chunks;
+		private final List<int[]> removed;
+		/** The saved entities, and the position and velocity of each when the snapshot was taken **/
+		private final List<Entity> entities;
+		private final float[] state;
+		private final int layers, width, height;
+		private final long seed;
+
+		private Snapshot(List<Chunk> chunks, List<int[]> removed, List<Entity> entities, float[] state,
+				BlockGrid blocks, long seed) {
+			this.chunks = chunks;
+			this.removed = removed;
+			this.entities = entities;
+			this.state = state;
+			this.layers = blocks.getLayers();
+			this.width = blocks.getWidth();
+			this.height = blocks.getHeight();
+			this.seed = seed;
+		}
+
+		/** @return the number of chunks that will be written or removed **/
+		public int getChunkCount() {
+			return chunks.size() + removed.size();
+		}
+
+		/** @return the number of entities that will be saved **/
+		public int getEntityCount() {
+			return entities.size();
+		}
+	}
+
+	/**
+	 * Opens a world directory, which is created if it doesn't exist.
+	 * @param serializer reads and writes blocks and entities
+	 */
+	public WorldStorage(Path directory, SerializerReaderWriter serializer) throws IOException {
+		this.directory = directory;
+		this.regionDirectory = directory.resolve(REGION_DIRECTORY);
+		this.serializer = serializer;
+		this.regions = new ConcurrentHashMap<>();
+		this.unsaved = new AtomicInteger();
+		Files.createDirectories(regionDirectory);
+	}
+
+	/** @return true if {@code directory} contains a saved world **/
+	public static boolean exists(Path directory) {
+		return Files.isRegularFile(directory.resolve(LEVEL_FILE));
+	}
+
+	/** @return the seed read by the last call to {@link #load()} or written by the last save **/
+	public synchronized long getSeed() {
+		return seed;
+	}
+
+	private static long regionKey(int regionX, int regionY) {
+		return (long)regionX << 32 | Integer.toUnsignedLong(regionY);
+	}
+
+	/** @return the region file containing a chunk, or null if it doesn't exist and {@code create} is false **/
+	private RegionFile region(int chunkX, int chunkY, boolean create) throws IOException {
+		int regionX = chunkX >> RegionFile.SHIFT, regionY = chunkY >> RegionFile.SHIFT;
+		long key = regionKey(regionX, regionY);
+		RegionFile region = regions.get(key);
+		if(region == null) {
+			Path file = regionDirectory.resolve("r." + regionX + "." + regionY + ".dat");
+			if(create || Files.exists(file)) {
+				try {
+					region = regions.computeIfAbsent(key, k -> {
+						try {
+							return new RegionFile(file);
+						} catch(IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					});
+				} catch(UncheckedIOException e) {
+					throw e.getCause();
+				}
+			}
+		}
+		return region;
+	}
+
+	private static int regionIndex(int chunkX, int chunkY) {
+		return RegionFile.index(chunkX & (RegionFile.SIZE - 1), chunkY & (RegionFile.SIZE - 1));
+	}
+
+	/**
+	 * Reads a single chunk, which can be done while another thread is saving.
+	 * @return the chunk, or null if the chunk was empty or hasn't been saved.
+	 */
+	public Chunk loadChunk(int chunkX, int chunkY) throws IOException {
+		RegionFile region = region(chunkX, chunkY, false);
+		ByteBuffer data = region == null ? null : region.read(regionIndex(chunkX, chunkY));
+		if(data == null) return null;
+		Chunk chunk = new Chunk(serializer.getCompressedReader(data));
+		if(chunk.getChunkX() != chunkX || chunk.getChunkY() != chunkY)
+			throw new IOException("region file contains chunk " + chunk.getChunkX() + ", " + chunk.getChunkY()
+				+ " in place of " + chunkX + ", " + chunkY);
+		return chunk;
+	}
+
+	private Chunk loadUnchecked(int chunkX, int chunkY) {
+		try {
+			return loadChunk(chunkX, chunkY);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Loads the level file and every chunk, the chunks of the loaded world are not dirty **/
+	public World load() throws IOException {
+		return load(true);
+	}
+
+	/**
+	 * Loads the level file, and every chunk if {@code readChunks} is true. Otherwise every chunk is left unloaded
+	 * with this storage as the grid's {@link BlockGrid.ChunkSource}, so chunks are only read when first accessed.
+	 * The chunks of the loaded world are not dirty.
+	 */
+	public synchronized World load(boolean readChunks) throws IOException {
+		BlockGrid blocks;
+		long seed;
+		List<Entity> entities;
+		try(FileChannel file = FileChannel.open(directory.resolve(LEVEL_FILE), StandardOpenOption.READ)) {
+			TransportableDataReader level = serializer.getCompressedReader(file);
+			if(level.readInteger() != MAGIC)
+				throw new IOException(LEVEL_FILE + " is not a world level file");
+			int version = level.readInteger();
+			if(version != VERSION)
+				throw new IOException("unsupported world version " + version);
+			blocks = new BlockGrid(level.readInteger(), level.readInteger(), level.readInteger());
+			seed = level.readLong();
+			int entityCount = level.readInteger();
+			entities = new ArrayList<>(Math.min(entityCount, 1024));
+			for(int i = 0; i < entityCount; i++) {
+				entities.add(level.readObject());
+			}
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		if(!readChunks) {
+			blocks.setChunkSource(this::loadUnchecked);
+		}
+		for(int chunkX = 0; chunkX < blocks.getChunksWide(); chunkX++) {
+			for(int chunkY = 0; chunkY < blocks.getChunksHigh(); chunkY++) {
+				if(readChunks) {
+					Chunk chunk = loadChunk(chunkX, chunkY);
+					if(chunk != null) blocks.setChunk(chunk);
+				} else {
+					blocks.unload(chunkX, chunkY);
+				}
+			}
+		}
+		blocks.clearDirty();
+		this.seed = seed;
+		return world = new World(blocks, entities);
+	}
+
+	/**
+	 * Writes every dirty chunk of the world, and then replaces the level file. Every chunk is written instead if the
+	 * world isn't the world last loaded or saved. Chunks are marked clean once they have been written.
+	 * @param seed the seed to store with the world
+	 * @param entityFilter the entities to save
+	 * @return the number of chunks written or removed.
+	 */
+	public int save(World world, long seed, Predicate<Entity> entityFilter) throws IOException {
+		return save(snapshot(world, seed, entityFilter));
+	}
+
+	/**
+	 * Captures the dirty chunks of the world, or every chunk if the world isn't the world last loaded or saved, and
+	 * the entities to save. The captured chunks are shared with the world's {@link BlockGrid} and marked clean, and
+	 * are only copied if the world changes them before they are saved. The position and velocity of each entity are
+	 * copied, and the entities are serialized by {@link #save(Snapshot)}, so the rest of their state must not change
+	 * until the snapshot is saved, which is true of entities that only hold an item. Must be called on the thread that
+	 * updates the world.
+	 * @param seed the seed to store with the world
+	 * @param entityFilter the entities to save
+	 */
+	public Snapshot snapshot(World world, long seed, Predicate<Entity> entityFilter) {
+		BlockGrid blocks = world.getBlocks();
+		boolean all = world != this.world;
+		List<Chunk> chunks = new ArrayList<>();
+		List<int[]> removed = new ArrayList<>();
+		for(int chunkX = 0; chunkX < blocks.getChunksWide(); chunkX++) {
+			for(int chunkY = 0; chunkY < blocks.getChunksHigh(); chunkY++) {
+				if(all || blocks.isDirty(chunkX, chunkY)) {
+					Chunk chunk = blocks.share(chunkX, chunkY);
+					if(chunk != null) {
+						chunks.add(chunk);
+					} else {
+						removed.add(new int[] {chunkX, chunkY});
+					}
+				}
+			}
+		}
+		blocks.clearDirty();
+		this.world = world;
+		unsaved.incrementAndGet();
+		List<Entity> entities = new ArrayList<>();
+		float[] state = new float[world.entities() * 4];
+		for(Entity e : world) {
+			if(entityFilter.test(e)) {
+				int offset = entities.size() * 4;
+				state[offset] = e.getPositionX();
+				state[offset + 1] = e.getPositionY();
+				state[offset + 2] = e.getVelocityX();
+				state[offset + 3] = e.getVelocityY();
+				entities.add(e);
+			}
+		}
+		return new Snapshot(chunks, removed, entities, state, blocks, seed);
+	}
+
+	/**
+	 * Writes the chunks of a snapshot, and then replaces the level file. Can be called from any thread, but
+	 * snapshots must be saved in the order they were taken. If the save fails, the next snapshot contains every chunk.
+	 * @return the number of chunks written or removed.
+	 */
+	public synchronized int save(Snapshot snapshot) throws IOException {
+		try {
+			List<RegionFile> changed = new ArrayList<>();
+			for(Chunk chunk : snapshot.chunks) {
+				RegionFile region = region(chunk.getChunkX(), chunk.getChunkY(), true);
+				region.write(regionIndex(chunk.getChunkX(), chunk.getChunkY()), Bytes.compress(serializer.serializeContents(chunk)));
+				if(!changed.contains(region)) changed.add(region);
+			}
+			for(int[] position : snapshot.removed) {
+				RegionFile region = region(position[0], position[1], false);
+				if(region != null) {
+					region.remove(regionIndex(position[0], position[1]));
+					if(!changed.contains(region)) changed.add(region);
+				}
+			}
+			for(RegionFile region : changed) {
+				region.commit();
+			}
+			Path temporary = directory.resolve(LEVEL_FILE + ".tmp");
+			Files.write(temporary, Bytes.compress(levelData(snapshot)));
+			Files.move(temporary, directory.resolve(LEVEL_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			this.seed = snapshot.seed;
+			return snapshot.getChunkCount();
+		} catch(IOException | RuntimeException e) {
+			//the chunks of the snapshot are no longer dirty, so they must all be saved again
+			world = null;
+			throw e;
+		} finally {
+			unsaved.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return true if every chunk of the world that isn't dirty has been saved and can be loaded with
+	 * {@link #loadChunk(int, int)}, which is false while a snapshot is being saved.
+	 */
+	public boolean isSaved(World world) {
+		return world == this.world && unsaved.get() == 0;
+	}
+
+	/** @return the uncompressed contents of the level file **/
+	private byte[] levelData(Snapshot snapshot) {
+		List<byte[]> entities = new ArrayList<>(snapshot.entities.size());
+		int entityBytes = 0;
+		for(int i = 0; i < snapshot.entities.size(); i++) {
+			byte[] data = serializeCaptured(snapshot.entities.get(i), snapshot.state, i * 4);
+			entities.add(data);
+			entityBytes += data.length;
+		}
+		byte[] level = new byte[32 + entityBytes];
+		Bytes.putInteger(level, 0, MAGIC);
+		Bytes.putInteger(level, 4, VERSION);
+		Bytes.putInteger(level, 8, snapshot.layers);
+		Bytes.putInteger(level, 12, snapshot.width);
+		Bytes.putInteger(level, 16, snapshot.height);
+		Bytes.putLong(level, 20, snapshot.seed);
+		Bytes.putInteger(level, 28, entities.size());
+		int index = 32;
+		for(byte[] data : entities) {
+			Bytes.copy(data, level, index);
+			index += data.length;
+		}
+		return level;
+	}
+
+	/**
+	 * Serializes a copy of an entity with the position and velocity it had when it was captured, since the world
+	 * keeps moving the entity while the snapshot is saved.
+	 */
+	private byte[] serializeCaptured(Entity e, float[] state, int offset) {
+		Entity copy = serializer.deserialize(serializer.serialize(e));
+		copy.setPositionX(state[offset]);
+		copy.setPositionY(state[offset + 1]);
+		copy.setVelocityX(state[offset + 2]);
+		copy.setVelocityY(state[offset + 3]);
+		return serializer.serialize(copy);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		IOException exception = null;
+		for(RegionFile region : regions.values()) {
+			try {
+				region.close();
+			} catch(IOException e) {
+				if(exception == null) exception = e; else exception.addSuppressed(e);
+			}
+		}
+		regions.clear();
+		if(exception != null) throw exception;
+	}
+}